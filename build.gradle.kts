@@ -3,6 +3,7 @@ import java.io.ByteArrayOutputStream
 plugins {
     java
     application
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "ru.itmo.khaser.java_pdg"
@@ -21,6 +22,16 @@ application {
     mainClass.set("ru.itmo.khaser.java_pdg.Main")
 }
 
+// Benchmarks live in src/jmh, run them with ./gradlew jmh
+jmh {
+    benchmarkMode.set(listOf("thrpt"))
+    profilers.set(listOf("gc"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
+
 tasks.register("runExamples") {
     group = "pdg"
     dependsOn("build")
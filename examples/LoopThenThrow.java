@@ -0,0 +1,8 @@
+public class LoopThenThrow {
+    public static int loopThenThrow(int n) {
+        while (n > 0) {
+            n = n - 1;
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,110 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Random;
+
+// Deterministic generator of large synthetic methods for benchmarks.
+//
+//   statements   number of statements, counting compound ones
+//   maxDepth     maximum nesting of if/while/for
+//   variables    number of int locals, all declared up front
+//   loopDensity  probability that a compound statement is a loop
+//   jumpDensity  probability that a statement inside a loop is a guarded break/continue
+public class MethodGenerator {
+    private final int statements;
+    private final int maxDepth;
+    private final int variables;
+    private final double loopDensity;
+    private final double jumpDensity;
+    private final Random random;
+    private final StringBuilder sb = new StringBuilder();
+    private int remaining;
+    private int loopCounter;
+
+    public MethodGenerator(int statements, int maxDepth, int variables,
+                           double loopDensity, double jumpDensity, long seed) {
+        this.statements = statements;
+        this.maxDepth = maxDepth;
+        this.variables = variables;
+        this.loopDensity = loopDensity;
+        this.jumpDensity = jumpDensity;
+        this.random = new Random(seed);
+    }
+
+    public String generate() {
+        sb.setLength(0);
+        remaining = statements;
+        loopCounter = 0;
+        sb.append("public class Generated {\n");
+        sb.append("    public static int generated(int p) {\n");
+        for (int i = 0; i < variables; ++i) {
+            indent(2).append("int v").append(i).append(" = p + ").append(i).append(";\n");
+        }
+        while (remaining > 0) {
+            statement(0, false);
+        }
+        indent(2).append("return v0;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void statement(int depth, boolean inLoop) {
+        --remaining;
+        if (inLoop && random.nextDouble() < jumpDensity) {
+            indent(depth + 2).append("if (").append(condition()).append(") ")
+                .append(random.nextBoolean() ? "break;" : "continue;").append("\n");
+            return;
+        }
+        if (depth < maxDepth && random.nextDouble() < 0.3) {
+            if (random.nextDouble() < loopDensity) {
+                loop(depth);
+            } else {
+                branch(depth, inLoop);
+            }
+            return;
+        }
+        indent(depth + 2).append(var()).append(" = ").append(var()).append(" + ").append(var()).append(";\n");
+    }
+
+    private void branch(int depth, boolean inLoop) {
+        indent(depth + 2).append("if (").append(condition()).append(") {\n");
+        block(depth + 1, inLoop);
+        if (random.nextBoolean()) {
+            indent(depth + 2).append("} else {\n");
+            block(depth + 1, inLoop);
+        }
+        indent(depth + 2).append("}\n");
+    }
+
+    private void loop(int depth) {
+        if (random.nextBoolean()) {
+            indent(depth + 2).append("while (").append(condition()).append(") {\n");
+        } else {
+            String i = "i" + loopCounter++;
+            indent(depth + 2).append("for (int ").append(i).append(" = 0; ").append(i).append(" < ")
+                .append(var()).append("; ").append(i).append("++) {\n");
+        }
+        block(depth + 1, true);
+        indent(depth + 2).append("}\n");
+    }
+
+    private void block(int depth, boolean inLoop) {
+        int size = 1 + random.nextInt(4);
+        for (int i = 0; i < size && remaining > 0; ++i) {
+            statement(depth, inLoop);
+        }
+    }
+
+    private String condition() {
+        return var() + " < " + var();
+    }
+
+    private String var() {
+        return "v" + random.nextInt(variables);
+    }
+
+    private StringBuilder indent(int level) {
+        for (int i = 0; i < level; ++i) sb.append("    ");
+        return sb;
+    }
+}
@@ -0,0 +1,133 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Every build phase is measured on its own: state up to the previous phase
+// is prepared in a per-invocation setup. Run with ./gradlew jmh, the gc
+// profiler adds allocation rates to the report.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PDGBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int statements;
+
+    @Param({"4"})
+    public int maxDepth;
+
+    @Param({"16"})
+    public int variables;
+
+    @Param({"0.3"})
+    public double loopDensity;
+
+    @Param({"0.05"})
+    public double jumpDensity;
+
+    private String source;
+    private MethodDeclaration method;
+    private PDG pdg;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        source = new MethodGenerator(statements, maxDepth, variables, loopDensity, jumpDensity, 42).generate();
+        CompilationUnit cu = new JavaParser().parse(source).getResult().orElseThrow();
+        method = cu.findFirst(MethodDeclaration.class).orElseThrow();
+        pdg = new PDGBuilder(method).build();
+    }
+
+    @Benchmark
+    public CompilationUnit parse() {
+        return new JavaParser().parse(source).getResult().orElseThrow();
+    }
+
+    @Benchmark
+    public PDGBuilder createNodes() {
+        var builder = new PDGBuilder(method);
+        builder.createNodes();
+        return builder;
+    }
+
+    @State(Scope.Thread)
+    public static class NodesCreated {
+        PDGBuilder builder;
+
+        @Setup(Level.Invocation)
+        public void setUp(PDGBenchmark benchmark) {
+            builder = new PDGBuilder(benchmark.method);
+            builder.createNodes();
+        }
+    }
+
+    @Benchmark
+    public PDGBuilder buildControlFlow(NodesCreated state) {
+        state.builder.buildControlFlow();
+        return state.builder;
+    }
+
+    @State(Scope.Thread)
+    public static class ControlFlowBuilt {
+        PDGBuilder builder;
+
+        @Setup(Level.Invocation)
+        public void setUp(PDGBenchmark benchmark) {
+            builder = new PDGBuilder(benchmark.method);
+            builder.createNodes();
+            builder.buildControlFlow();
+        }
+    }
+
+    @Benchmark
+    public PDGBuilder buildControlDependences(ControlFlowBuilt state) {
+        state.builder.buildControlDependences();
+        return state.builder;
+    }
+
+    @Benchmark
+    public PDGBuilder buildDataDependencies(ControlFlowBuilt state) {
+        state.builder.buildDataDependencies();
+        return state.builder;
+    }
+
+    // Baseline for the variable-group split that large methods get
+    @Benchmark
+    public PDGBuilder buildDataDependenciesSequential(ControlFlowBuilt state) {
+        state.builder.setParallelDataThreshold(Integer.MAX_VALUE);
+        state.builder.buildDataDependencies();
+        return state.builder;
+    }
+
+    @Benchmark
+    public PDGBuilder buildDataDependenciesSsa(ControlFlowBuilt state) {
+        state.builder.setSsa(true);
+        state.builder.buildDataDependencies();
+        return state.builder;
+    }
+
+    @Benchmark
+    public PDG build() {
+        return new PDGBuilder(method).build();
+    }
+
+    @Benchmark
+    public void exportDot() throws IOException {
+        new DotExporter().export(pdg, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void exportJsonLines() throws IOException {
+        new JsonLinesExporter().export(pdg, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void exportBinary() throws IOException {
+        new BinaryExporter().export(pdg, OutputStream.nullOutputStream());
+    }
+}
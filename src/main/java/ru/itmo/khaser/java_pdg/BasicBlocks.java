@@ -0,0 +1,75 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Arrays;
+
+// The basic blocks of a statement CFG: maximal straight-line runs of nodes
+// in which every node but the first has exactly one predecessor, and that
+// predecessor has no other successor. Data flow facts only change along such
+// a run, never merge or split, so the analyses solve over blocks and expand
+// to the nodes of a block when statement granularity is asked for.
+//
+// Blocks are numbered in the order of their first nodes; a cycle of nodes
+// that all continue a run (only in unreachable code) starts at its lowest node.
+class BasicBlocks {
+    final int blockCount;
+    final int[] blockOf;     // node -> block
+    final int[] position;    // node -> index in nodes
+    final int[] nodeOffsets; // nodes of block b are nodes[nodeOffsets[b]..nodeOffsets[b + 1]), in flow order
+    final int[] nodes;
+    final CsrGraph.Plane cfg; // edges between blocks
+
+    private BasicBlocks(int blockCount, int[] blockOf, int[] position, int[] nodeOffsets, int[] nodes,
+                        CsrGraph.Plane cfg) {
+        this.blockCount = blockCount;
+        this.blockOf = blockOf;
+        this.position = position;
+        this.nodeOffsets = nodeOffsets;
+        this.nodes = nodes;
+        this.cfg = cfg;
+    }
+
+    static BasicBlocks of(CsrGraph.Plane cfg, int nodeCount, BuildBudget budget) {
+        boolean[] continues = new boolean[nodeCount]; // continues the run of its only predecessor
+        for (int v = 0; v < nodeCount; ++v) {
+            if (cfg.inEnd(v) - cfg.inBegin(v) != 1) continue;
+            int p = cfg.source(cfg.inBegin(v));
+            continues[v] = p != v && cfg.outEnd(p) - cfg.outBegin(p) == 1;
+        }
+
+        int[] blockOf = new int[nodeCount];
+        Arrays.fill(blockOf, -1);
+        int[] position = new int[nodeCount];
+        int[] nodes = new int[nodeCount];
+        int[] nodeOffsets = new int[nodeCount + 1];
+        int blockCount = 0;
+        int placed = 0;
+        // Runs from their first nodes, then the cycles left over
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int first = 0; first < nodeCount; ++first) {
+                if (blockOf[first] >= 0 || (pass == 0 && continues[first])) continue;
+                budget.checkTime();
+                int v = first;
+                while (true) {
+                    blockOf[v] = blockCount;
+                    position[v] = placed;
+                    nodes[placed++] = v;
+                    if (cfg.outEnd(v) - cfg.outBegin(v) != 1) break;
+                    int next = cfg.target(cfg.outBegin(v));
+                    if (!continues[next] || blockOf[next] >= 0) break;
+                    v = next;
+                }
+                nodeOffsets[++blockCount] = placed;
+            }
+        }
+
+        var edges = new CsrGraph.EdgeBuffer(false);
+        for (int b = 0; b < blockCount; ++b) {
+            int last = nodes[nodeOffsets[b + 1] - 1];
+            for (int e = cfg.outBegin(last); e < cfg.outEnd(last); ++e) {
+                edges.add(b, blockOf[cfg.target(e)], -1);
+            }
+        }
+        return new BasicBlocks(blockCount, blockOf, position, Arrays.copyOf(nodeOffsets, blockCount + 1), nodes,
+                               edges.toPlane(blockCount));
+    }
+}
@@ -0,0 +1,536 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Builds a PDG for every method of every source file in one JVM.
+// Files are read in order by one reader thread, so that I/O overlaps with
+// parsing, then parsed and their methods built on a work-stealing pool;
+// results are streamed by the calling thread in file order, then method
+// order. At most WINDOW_PER_THREAD files per thread are in flight, read ahead
+// or being parsed, so memory does not grow with the number of files.
+// Inputs may be directories, files, and zip or jar archives, see SourceSet.
+public class BatchRunner {
+    static class Source {
+        final Path path;
+        final String name; // path relative to its input root, see collectSources
+
+        Source(Path path, String name) {
+            this.path = path;
+            this.name = name;
+        }
+    }
+
+    static class MethodResult {
+        final String signature;
+        final String type;     // enclosing type declarations, "Outer.Inner", "" outside of any
+        final int line;
+        final String cacheKey; // of the graph in the PDGCache, null without a cache
+        final PDG pdg;         // null if only the rendered export is needed
+        final byte[] rendered; // export without a title, prepared when a cache is used with outputDir
+        final BuildMetrics metrics;
+        final PDGFingerprint fingerprint; // null unless clones are reported
+
+        MethodResult(String signature, String type, int line, String cacheKey, PDG pdg, byte[] rendered,
+                     BuildMetrics metrics, PDGFingerprint fingerprint) {
+            this.signature = signature;
+            this.type = type;
+            this.line = line;
+            this.cacheKey = cacheKey;
+            this.pdg = pdg;
+            this.rendered = rendered;
+            this.metrics = metrics;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    static class FileResult {
+        final Source source;
+        final List<MethodResult> methods;
+        final String error;
+        final BuildMetrics metrics;
+
+        FileResult(Source source, List<MethodResult> methods, String error, BuildMetrics metrics) {
+            this.source = source;
+            this.methods = methods;
+            this.error = error;
+            this.metrics = metrics;
+        }
+    }
+
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final ExecutorService reader;
+    private final int window;
+    private final Path outputDir;
+    private final PDGExporter exporter;
+    private final Path storePath;
+    private final Path metricsPath;
+    private final Path clonesPath;
+    private final PDGCache cache;
+    private final boolean ssa;
+    private final BuildBudget budget;
+
+    // Graphs are appended to the store at storePath if it is set, otherwise
+    // exported into outputDir, or to stdout when outputDir is null.
+    // A JSON report of per-phase metrics is written to metricsPath if it is set,
+    // a report of clone groups (see CloneIndex) to clonesPath if it is set.
+    // With a cache, unchanged methods are not rebuilt and unchanged files not
+    // parsed; run() closes the cache. With ssa, data dependences come from
+    // SSA def-use chains, see PDGBuilder.setSsa. Every method is built within
+    // a copy of budget; graphs built with a fallback are reported on stderr
+    // and not cached
+    public BatchRunner(int parallelism, Path outputDir, PDGExporter exporter, Path storePath, Path metricsPath,
+                       Path clonesPath, PDGCache cache, boolean ssa, BuildBudget budget) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.reader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pdg-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = parallelism * WINDOW_PER_THREAD;
+        this.outputDir = outputDir;
+        this.exporter = exporter;
+        this.storePath = storePath;
+        this.metricsPath = metricsPath;
+        this.clonesPath = clonesPath;
+        this.cache = cache;
+        this.ssa = ssa;
+        this.budget = budget;
+    }
+
+    public static void main(String[] args) {
+        Path outputDir = null;
+        Path storePath = null;
+        Path metricsPath = null;
+        Path clonesPath = null;
+        Path cachePath = null;
+        long cacheBytes = PDGCache.DEFAULT_MAX_BYTES;
+        boolean ssa = false;
+        long timeBudget = 0;
+        int maxNodes = 0;
+        long maxEdges = 0;
+        String format = "dot";
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--out") && i + 1 < args.length) {
+                outputDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--store") && i + 1 < args.length) {
+                storePath = Paths.get(args[++i]);
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--clones") && i + 1 < args.length) {
+                clonesPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cachePath = Paths.get(args[++i]);
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheBytes = Long.parseLong(args[++i]) << 20;
+            } else if (args[i].equals("--ssa")) {
+                ssa = true;
+            } else if (args[i].equals("--time-budget") && i + 1 < args.length) {
+                timeBudget = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--max-nodes") && i + 1 < args.length) {
+                maxNodes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-edges") && i + 1 < args.length) {
+                maxEdges = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: java Main --batch [--format <f>] [--out <dir> | --store <file>] [--threads <n>] [--ssa] [--time-budget <ms>] [--max-nodes <n>] [--max-edges <n>] [--metrics <file>] [--clones <file>] [--cache <dir> [--cache-size <mb>]] <source-root-file-or-archive>...");
+            System.exit(1);
+        }
+
+        try {
+            PDGCache cache = cachePath != null ? new PDGCache(cachePath, cacheBytes) : null;
+            boolean ok = new BatchRunner(parallelism, outputDir, PDGExporter.forFormat(format), storePath, metricsPath,
+                                         clonesPath, cache, ssa, new BuildBudget(timeBudget, maxNodes, maxEdges))
+                .run(inputs);
+            System.exit(ok ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Returns false if some file failed to parse or to build
+    public boolean run(List<Path> inputs) throws IOException {
+        SourceSet sourceSet;
+        try {
+            sourceSet = SourceSet.open(inputs);
+        } catch (IOException e) {
+            pool.shutdownNow();
+            reader.shutdownNow();
+            throw e;
+        }
+        List<Source> sources = sourceSet.sources;
+        Deque<CompletableFuture<FileResult>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+        List<BuildMetrics> metrics = new ArrayList<>();
+        CloneIndex clones = clonesPath != null ? new CloneIndex() : null;
+
+        boolean ok = true;
+        OutputStream out = System.out;
+        PDGStore.Writer store = null;
+        try {
+            if (storePath != null) store = new PDGStore.Writer(storePath);
+            while (submitted < sources.size() || !inFlight.isEmpty()) {
+                while (submitted < sources.size() && inFlight.size() < window) {
+                    inFlight.addLast(submit(sources.get(submitted++)));
+                }
+                FileResult result = inFlight.removeFirst().join();
+                metrics.add(result.metrics);
+                if (result.error != null) {
+                    System.err.println(result.source.name + ": " + result.error);
+                    ok = false;
+                    continue;
+                }
+                Set<String> keys = new HashSet<>();
+                for (MethodResult method : result.methods) {
+                    String key = result.source.name + ": " + methodKey(method, keys);
+                    if (method.pdg != null && method.pdg.isDegraded()) {
+                        System.err.println(result.source.name + ": " + method.signature + ": " + method.pdg.degradation());
+                    }
+                    if (clones != null) clones.add(key, method.fingerprint);
+                    var export = method.metrics.start(BuildMetrics.Phase.EXPORT);
+                    if (store != null) {
+                        store.add(key, method.pdg);
+                    } else if (outputDir == null) {
+                        exporter.export(method.pdg, result.source.name + ": " + method.signature, out);
+                    } else {
+                        Path file = outputDir.resolve(outputName(result.source, method));
+                        Files.createDirectories(file.getParent());
+                        try (OutputStream fileOut = Files.newOutputStream(file)) {
+                            if (method.rendered != null) {
+                                fileOut.write(method.rendered);
+                            } else {
+                                exporter.export(method.pdg, fileOut);
+                            }
+                        }
+                    }
+                    export.end();
+                }
+            }
+            out.flush();
+            if (metricsPath != null) {
+                try (var writer = Files.newBufferedWriter(metricsPath)) {
+                    BuildMetrics.writeReport(metrics, writer);
+                }
+            }
+            if (clones != null) {
+                try (var writer = Files.newBufferedWriter(clonesPath)) {
+                    clones.writeReport(writer);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            reader.shutdownNow();
+            sourceSet.close();
+            if (store != null) store.close();
+            if (cache != null) cache.close();
+        }
+        return ok;
+    }
+
+    // Read on the reader thread, then analysed on the pool. A file that fails
+    // is reported like one that does not parse, the others go on
+    private CompletableFuture<FileResult> submit(Source source) {
+        var metrics = new BuildMetrics(source.name);
+        return CompletableFuture
+            .supplyAsync(() -> read(source, metrics), reader)
+            .handleAsync((bytes, error) -> {
+                if (bytes == null) {
+                    return new FileResult(source, null, "Error reading file: " + readError(error).getMessage(), metrics);
+                }
+                try {
+                    return analyseFile(source, bytes, metrics);
+                } catch (RuntimeException | StackOverflowError e) {
+                    return new FileResult(source, null, "Failed to build the file: " + e, metrics);
+                }
+            }, pool);
+    }
+
+    private static byte[] read(Source source, BuildMetrics metrics) {
+        var span = metrics.start(BuildMetrics.Phase.READ);
+        try {
+            return Files.readAllBytes(source.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            span.end();
+        }
+    }
+
+    private static Throwable readError(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof UncheckedIOException) error = error.getCause();
+        return error;
+    }
+
+    // With several inputs, source names start with the 1-based index of their
+    // input, "2/pkg/A.java", so that equal paths under different roots, or
+    // files of the same name, do not share outputs and store keys
+    static List<Source> collectSources(List<Path> inputs) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); ++i) {
+            collectSources(inputs.get(i), inputPrefix(inputs, i), sources);
+        }
+        return sources;
+    }
+
+    static String inputPrefix(List<Path> inputs, int index) {
+        return inputs.size() > 1 ? (index + 1) + "/" : "";
+    }
+
+    // The .java files of a directory tree, or the file itself, named prefix
+    // and the path relative to the tree
+    static void collectSources(Path input, String prefix, List<Source> sources) throws IOException {
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> walk = Files.walk(input)) {
+                List<Path> files = walk
+                    .filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".java"))
+                    .sorted()
+                    .collect(Collectors.toList());
+                for (Path file : files) {
+                    sources.add(new Source(file, prefix + input.relativize(file)));
+                }
+            }
+        } else {
+            sources.add(new Source(input, prefix + input.getFileName()));
+        }
+    }
+
+    // Sources are decoded as UTF-8, whatever the platform charset
+    private FileResult analyseFile(Source source, byte[] bytes, BuildMetrics metrics) {
+        String fileKey = null;
+        if (cache != null) {
+            fileKey = PDGCache.key(ssa ? "file-ssa" : "file", Hashes.sha256(bytes));
+            FileResult cached = loadFile(source, fileKey, metrics);
+            if (cached != null) return cached;
+        }
+
+        metrics.bytesParsed = bytes.length;
+        var parse = metrics.start(BuildMetrics.Phase.PARSE);
+        CompilationUnit cu;
+        try {
+            // JavaParser instances are not thread-safe, so each task gets its own
+            cu = new JavaParser().parse(new String(bytes, StandardCharsets.UTF_8)).getResult().orElse(null);
+        } finally {
+            parse.end();
+        }
+        if (cu == null) {
+            return new FileResult(source, null, "Failed to parse the file", metrics);
+        }
+
+        List<ForkJoinTask<MethodResult>> builds = new ArrayList<>();
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            builds.add(ForkJoinTask.adapt(() -> buildMethod(method)));
+        }
+        ForkJoinTask.invokeAll(builds);
+
+        List<MethodResult> methods = new ArrayList<>(builds.size());
+        for (var build : builds) {
+            MethodResult method = build.join();
+            methods.add(method);
+            metrics.addChild(method.metrics);
+        }
+        if (fileKey != null) storeFile(fileKey, methods, metrics);
+        return new FileResult(source, methods, null, metrics);
+    }
+
+    private MethodResult buildMethod(MethodDeclaration method) {
+        String signature = method.getSignature().asString();
+        String type = typePath(method);
+        int line = method.getBegin().map(p -> p.line).orElse(0);
+        String cacheKey = null;
+        if (cache != null) {
+            int column = method.getBegin().map(p -> p.column).orElse(0);
+            String text = method.getTokenRange().map(Object::toString).orElseGet(method::toString);
+            cacheKey = PDGCache.key(ssa ? "graph-ssa" : "graph", Integer.toString(column), text);
+            MethodResult cached = loadMethod(signature, type, line, cacheKey);
+            if (cached != null) return cached;
+        }
+
+        var metrics = new BuildMetrics(signature);
+        // Frozen, so that results waiting for export do not keep the file's AST alive
+        var builder = new PDGBuilder(method, metrics);
+        builder.setSsa(ssa);
+        builder.setBudget(budget.copy());
+        PDG pdg = builder.build().freeze();
+        // A fallback depends on the machine and its load, not only on the source
+        if (pdg.isDegraded()) metrics.degradedMethods = 1;
+        if (cacheKey != null && !pdg.isDegraded()) {
+            var span = metrics.start(BuildMetrics.Phase.CACHE);
+            try {
+                cache.put(cacheKey, PDGCache.encode(pdg, line));
+            } catch (IOException e) {
+                // too large for a store record, it is rebuilt every time
+            } finally {
+                span.end();
+            }
+        }
+        return finish(signature, type, line, cacheKey, pdg, null, metrics);
+    }
+
+    // File manifest: int method count, then per method UTF signature, UTF type, int line, UTF graph key
+    private void storeFile(String fileKey, List<MethodResult> methods, BuildMetrics metrics) {
+        var span = metrics.start(BuildMetrics.Phase.CACHE);
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+            out.writeInt(methods.size());
+            for (MethodResult method : methods) {
+                out.writeUTF(method.signature);
+                out.writeUTF(method.type);
+                out.writeInt(method.line);
+                out.writeUTF(method.cacheKey);
+            }
+            out.flush();
+            cache.put(fileKey, bytes.toByteArray());
+        } catch (IOException e) {
+            // not cached, the file is parsed again next time
+        } finally {
+            span.end();
+        }
+    }
+
+    // Results for file content seen before, without parsing it; null if it
+    // was not seen or an entry it needs has been evicted since
+    private FileResult loadFile(Source source, String fileKey, BuildMetrics metrics) {
+        List<MethodResult> methods;
+        var span = metrics.start(BuildMetrics.Phase.CACHE);
+        try {
+            byte[] manifest = cache.get(fileKey);
+            if (manifest == null) return null;
+            var in = new DataInputStream(new ByteArrayInputStream(manifest));
+            int count = in.readInt();
+            methods = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                String signature = in.readUTF();
+                String type = in.readUTF();
+                int line = in.readInt();
+                MethodResult method = loadMethod(signature, type, line, in.readUTF());
+                if (method == null) return null;
+                methods.add(method);
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            span.end();
+        }
+        for (MethodResult method : methods) metrics.addChild(method.metrics);
+        return new FileResult(source, methods, null, metrics);
+    }
+
+    // The graph is decoded only if the rendered export is not enough
+    private MethodResult loadMethod(String signature, String type, int line, String cacheKey) {
+        var metrics = new BuildMetrics(signature);
+        byte[] rendered = null;
+        PDG pdg = null;
+        var span = metrics.start(BuildMetrics.Phase.CACHE);
+        try {
+            if (rendersExports()) rendered = cache.get(exportKey(cacheKey, line));
+            if (rendered == null || clonesPath != null) {
+                byte[] entry = cache.get(cacheKey);
+                if (entry == null) return null;
+                pdg = PDGCache.decode(entry, line);
+                metrics.nodes = pdg.nodes.size();
+                metrics.controlEdges = pdg.graph.control.edgeCount();
+                metrics.dataEdges = pdg.graph.data.edgeCount();
+            }
+        } finally {
+            span.end();
+        }
+        metrics.cachedMethods = 1;
+        return finish(signature, type, line, cacheKey, pdg, rendered, metrics);
+    }
+
+    // Renders the export and fingerprints the graph, as far as this run needs them
+    private MethodResult finish(String signature, String type, int line, String cacheKey, PDG pdg, byte[] rendered,
+                                BuildMetrics metrics) {
+        if (rendered == null && rendersExports()) {
+            var export = metrics.start(BuildMetrics.Phase.EXPORT);
+            var bytes = new ByteArrayOutputStream();
+            try {
+                exporter.export(pdg, bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                export.end();
+            }
+            rendered = bytes.toByteArray();
+            if (!pdg.isDegraded()) {
+                var span = metrics.start(BuildMetrics.Phase.CACHE);
+                cache.put(exportKey(cacheKey, line), rendered);
+                span.end();
+            }
+        }
+        PDGFingerprint fingerprint = clonesPath != null ? PDGFingerprint.of(pdg) : null;
+        return new MethodResult(signature, type, line, cacheKey, pdg, rendered, metrics, fingerprint);
+    }
+
+    // The names of the type declarations around method, outermost first
+    static String typePath(MethodDeclaration method) {
+        var names = new ArrayDeque<String>();
+        for (Node parent = method.getParentNode().orElse(null); parent != null; parent = parent.getParentNode().orElse(null)) {
+            if (parent instanceof TypeDeclaration) names.addFirst(((TypeDeclaration<?>) parent).getNameAsString());
+        }
+        return String.join(".", names);
+    }
+
+    // Store and clone report key within a file: <type path>.<signature>@<line>,
+    // with a #n suffix if the same key occurs again. Signatures alone repeat
+    // across nested classes, e.g. the size() methods of HashMap and its views
+    static String methodKey(MethodResult method, Set<String> taken) {
+        String base = (method.type.isEmpty() ? "" : method.type + ".") + method.signature + "@" + method.line;
+        String key = base;
+        for (int i = 2; !taken.add(key); ++i) {
+            key = base + "#" + i;
+        }
+        return key;
+    }
+
+    // Exports name nodes by line, so they are cached per line as well
+    private String exportKey(String cacheKey, int line) {
+        return PDGCache.key("export", exporter.getClass().getName(), cacheKey, Integer.toString(line));
+    }
+
+    // Exports are cached when they go to files, without a title
+    private boolean rendersExports() {
+        return cache != null && storePath == null && outputDir != null;
+    }
+
+    // <relative path without .java>/<method>@<line>.<ext>, unique within a file
+    private String outputName(Source source, MethodResult method) {
+        String base = source.name.endsWith(".java")
+            ? source.name.substring(0, source.name.length() - ".java".length())
+            : source.name;
+        String name = method.signature.substring(0, method.signature.indexOf('('));
+        return base + "/" + name + "@" + method.line + "." + exporter.fileExtension();
+    }
+}
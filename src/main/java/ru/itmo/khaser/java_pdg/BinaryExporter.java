@@ -0,0 +1,75 @@
+package ru.itmo.khaser.java_pdg;
+
+import ru.itmo.khaser.java_pdg.PDGEdge.EdgeType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Length-prefixed big-endian binary format, one self-delimiting record per graph:
+//
+//   int    MAGIC
+//   string title ("" if none)
+//   byte   fallback (BuildBudget.Fallback ordinal, 0 for a complete graph)
+//   string budget that ran out: "time", "nodes", "edges" ("" if none)
+//   int    node count, then per node: string label, byte reachable
+//   int    variable count, then per variable: string name
+//   per EdgeType in declaration order:
+//     int  edge count, then per edge: int source, int target
+//          [, int variable count, int variable* for DATA]
+//
+// where string is an int byte length followed by UTF-8 bytes.
+public class BinaryExporter implements PDGExporter {
+    public static final int MAGIC = 0x50444733; // "PDG3"
+
+    @Override
+    public void export(PDG pdg, String title, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        writeString(data, title != null ? title : "");
+        data.writeByte(pdg.fallback.ordinal());
+        writeString(data, pdg.exceeded != null ? pdg.exceeded : "");
+
+        data.writeInt(pdg.nodes.size());
+        for (PDGNode node : pdg.nodes) {
+            writeString(data, node.label());
+            data.writeByte(node.reachable ? 1 : 0);
+        }
+
+        data.writeInt(pdg.graph.vars.length);
+        for (String var : pdg.graph.vars) {
+            writeString(data, var);
+        }
+
+        for (EdgeType type : EdgeType.values()) {
+            CsrGraph.Plane plane = pdg.graph.plane(type);
+            data.writeInt(plane.edgeCount());
+            for (int v = 0; v < pdg.graph.nodeCount; ++v) {
+                for (int e = plane.outBegin(v); e < plane.outEnd(v); ++e) {
+                    data.writeInt(v);
+                    data.writeInt(plane.target(e));
+                    if (type == EdgeType.DATA) {
+                        data.writeInt(plane.outVarEnd(e) - plane.outVarBegin(e));
+                        for (int i = plane.outVarBegin(e); i < plane.outVarEnd(e); ++i) {
+                            data.writeInt(plane.var(i));
+                        }
+                    }
+                }
+            }
+        }
+        data.flush();
+    }
+
+    @Override
+    public String fileExtension() {
+        return "bin";
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
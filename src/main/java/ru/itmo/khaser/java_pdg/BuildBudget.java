@@ -0,0 +1,83 @@
+package ru.itmo.khaser.java_pdg;
+
+// Limits on building one method's PDG: wall time, nodes, and edges over all
+// planes. The builder and its analyses check them cooperatively in their
+// loops and throw Exceeded when one runs out; PDGBuilder.build then falls
+// back to a cheaper graph and flags it (see Fallback). A limit of 0 is none.
+//
+// The clock starts with start(), and the edges of finished planes are added
+// with commitEdges, so an instance serves one build at a time.
+public class BuildBudget {
+    public enum Fallback {
+        NONE,         // built completely
+        CONTROL_ONLY, // no data dependences
+        SUMMARY       // ENTRY, EXIT and one node standing for the whole body
+    }
+
+    // Thrown by the checks; it carries no stack trace, it is control flow
+    static class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String limit; // "time", "nodes" or "edges"
+
+        Exceeded(String limit) {
+            super(limit + " budget exceeded", null, false, false);
+            this.limit = limit;
+        }
+    }
+
+    // Time is read on every TIME_CHECK_INTERVAL-th checkTime only
+    private static final int TIME_CHECK_INTERVAL = 64;
+
+    final long maxMillis;
+    final int maxNodes;
+    final long maxEdges;
+    private long deadline = Long.MAX_VALUE;
+    private long committedEdges;
+    private int ticks;
+
+    public BuildBudget(long maxMillis, int maxNodes, long maxEdges) {
+        this.maxMillis = maxMillis;
+        this.maxNodes = maxNodes;
+        this.maxEdges = maxEdges;
+    }
+
+    public static BuildBudget unlimited() {
+        return new BuildBudget(0, 0, 0);
+    }
+
+    // A budget with the same limits for another build
+    public BuildBudget copy() {
+        return new BuildBudget(maxMillis, maxNodes, maxEdges);
+    }
+
+    public boolean isUnlimited() {
+        return maxMillis <= 0 && maxNodes <= 0 && maxEdges <= 0;
+    }
+
+    void start() {
+        deadline = maxMillis > 0 ? System.nanoTime() + maxMillis * 1_000_000 : Long.MAX_VALUE;
+        committedEdges = 0;
+        ticks = 0;
+    }
+
+    // Called from the analyses' loops, also from the fork-join tasks of one
+    // build at once: a lost tick only delays the next look at the clock
+    void checkTime() {
+        if (deadline == Long.MAX_VALUE || ++ticks % TIME_CHECK_INTERVAL != 0) return;
+        if (System.nanoTime() - deadline > 0) throw new Exceeded("time");
+    }
+
+    void checkNodes(int nodes) {
+        if (maxNodes > 0 && nodes > maxNodes) throw new Exceeded("nodes");
+    }
+
+    // pending are the edges of the plane being built
+    void checkEdges(long pending) {
+        if (maxEdges > 0 && committedEdges + pending > maxEdges) throw new Exceeded("edges");
+    }
+
+    void commitEdges(long edges) {
+        committedEdges += edges;
+    }
+}
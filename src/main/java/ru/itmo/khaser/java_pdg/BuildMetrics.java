@@ -0,0 +1,177 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// Per-phase timings, allocations and graph counters of one file or method.
+// A file's metrics hold its parse phase and one child per built method.
+// Every phase is also committed as a PhaseEvent when JFR is recording.
+public class BuildMetrics {
+    public enum Phase {
+        READ,
+        PARSE,
+        CREATE_NODES,
+        CONTROL_FLOW,
+        CONTROL_DEPENDENCES,
+        DATA_DEPENDENCIES,
+        FINISH,
+        EXPORT,
+        CACHE
+    }
+
+    public class Span {
+        private final Phase phase;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Span(Phase phase) {
+            this.phase = phase;
+            this.startAllocated = allocatedBytes();
+            this.startNanos = System.nanoTime();
+            event.begin();
+        }
+
+        public void end() {
+            event.end();
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startAllocated;
+            nanos[phase.ordinal()] += elapsed;
+            allocations[phase.ordinal()] += allocated;
+            if (event.shouldCommit()) {
+                event.subject = subject;
+                event.phase = phase.name();
+                event.nodes = nodes;
+                event.cfgEdges = cfgEdges;
+                event.controlEdges = controlEdges;
+                event.dataEdges = dataEdges;
+                event.definitions = definitions;
+                event.blocks = blocks;
+                event.bytesParsed = bytesParsed;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    final String subject;
+    final long[] nanos = new long[Phase.values().length];
+    final long[] allocations = new long[Phase.values().length];
+    final List<BuildMetrics> children = new ArrayList<>();
+    int nodes;
+    int cfgEdges;
+    int controlEdges;
+    int dataEdges;
+    int definitions;
+    int blocks; // basic blocks the data dependences were solved over
+    long bytesParsed;
+    int cachedMethods; // methods whose graphs came from a PDGCache
+    int degradedMethods; // methods built with a fallback, see BuildBudget
+
+    public BuildMetrics(String subject) {
+        this.subject = subject;
+    }
+
+    public Span start(Phase phase) {
+        return new Span(phase);
+    }
+
+    public synchronized void addChild(BuildMetrics child) {
+        children.add(child);
+    }
+
+    // {"files":[...],"total":{...}}
+    public static void writeReport(List<BuildMetrics> files, Writer out) throws IOException {
+        var total = new BuildMetrics("total");
+        int methods = 0;
+        out.append("{\"files\":[");
+        for (int i = 0; i < files.size(); ++i) {
+            if (i > 0) out.append(",");
+            BuildMetrics file = files.get(i);
+            file.writeJson(out);
+            total.accumulate(file);
+            for (BuildMetrics method : file.children) {
+                total.accumulate(method);
+                ++methods;
+            }
+        }
+        out.append("],\"total\":{\"files\":").append(Integer.toString(files.size()));
+        out.append(",\"methods\":").append(Integer.toString(methods)).append(",");
+        total.writeFields(out);
+        out.append("}}\n");
+    }
+
+    private void writeJson(Writer out) throws IOException {
+        out.append("{\"subject\":");
+        Json.appendString(out, subject);
+        out.append(",");
+        writeFields(out);
+        if (!children.isEmpty()) {
+            out.append(",\"methods\":[");
+            for (int i = 0; i < children.size(); ++i) {
+                if (i > 0) out.append(",");
+                children.get(i).writeJson(out);
+            }
+            out.append("]");
+        }
+        out.append("}");
+    }
+
+    private void writeFields(Writer out) throws IOException {
+        out.append("\"nodes\":").append(Integer.toString(nodes));
+        out.append(",\"cfgEdges\":").append(Integer.toString(cfgEdges));
+        out.append(",\"controlEdges\":").append(Integer.toString(controlEdges));
+        out.append(",\"dataEdges\":").append(Integer.toString(dataEdges));
+        out.append(",\"definitions\":").append(Integer.toString(definitions));
+        out.append(",\"blocks\":").append(Integer.toString(blocks));
+        out.append(",\"bytesParsed\":").append(Long.toString(bytesParsed));
+        out.append(",\"cachedMethods\":").append(Integer.toString(cachedMethods));
+        out.append(",\"degradedMethods\":").append(Integer.toString(degradedMethods));
+        out.append(",\"phases\":{");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            if (nanos[phase.ordinal()] == 0) continue;
+            if (!first) out.append(",");
+            first = false;
+            out.append("\"").append(phase.name()).append("\":{\"nanos\":").append(Long.toString(nanos[phase.ordinal()]));
+            out.append(",\"allocatedBytes\":").append(Long.toString(allocations[phase.ordinal()])).append("}");
+        }
+        out.append("}");
+    }
+
+    private void accumulate(BuildMetrics other) {
+        nodes += other.nodes;
+        cfgEdges += other.cfgEdges;
+        controlEdges += other.controlEdges;
+        dataEdges += other.dataEdges;
+        definitions += other.definitions;
+        blocks += other.blocks;
+        bytesParsed += other.bytesParsed;
+        cachedMethods += other.cachedMethods;
+        degradedMethods += other.degradedMethods;
+        for (int i = 0; i < nanos.length; ++i) {
+            nanos[i] += other.nanos[i];
+            allocations[i] += other.allocations[i];
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        var bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            var threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+}
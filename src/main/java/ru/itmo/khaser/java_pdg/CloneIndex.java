@@ -0,0 +1,162 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+// Groups methods whose PDGs have the same shape. Methods with equal graph
+// hashes are exact clones. Near clones are found through an inverted index
+// from subgraph hashes to methods: only methods sharing a feature are ever
+// compared, and features that occur in more than maxPosting methods (an
+// assignment followed by a return, say) are left out, so the number of pairs
+// counted grows linearly with the number of methods. Pairs whose Jaccard
+// similarity over the remaining features reaches minSimilarity are merged into
+// groups with union-find.
+public class CloneIndex {
+    public static final int MIN_NODES = 8;
+    public static final double MIN_SIMILARITY = 0.8;
+    public static final int MAX_POSTING = 64;
+
+    public static class Group {
+        final boolean exact; // all methods have the same graph hash
+        final List<String> methods;
+
+        Group(boolean exact, List<String> methods) {
+            this.exact = exact;
+            this.methods = methods;
+        }
+    }
+
+    private final int minNodes;
+    private final double minSimilarity;
+    private final int maxPosting;
+    private final List<String> methods = new ArrayList<>();
+    private final List<PDGFingerprint> fingerprints = new ArrayList<>();
+    private final Map<Long, int[]> postings = new HashMap<>(); // [size, method...]
+    private int seen;
+
+    public CloneIndex() {
+        this(MIN_NODES, MIN_SIMILARITY, MAX_POSTING);
+    }
+
+    public CloneIndex(int minNodes, double minSimilarity, int maxPosting) {
+        this.minNodes = minNodes;
+        this.minSimilarity = minSimilarity;
+        this.maxPosting = maxPosting;
+    }
+
+    // Methods smaller than minNodes are counted but not indexed
+    public void add(String method, PDGFingerprint fingerprint) {
+        ++seen;
+        if (fingerprint.nodeCount < minNodes) return;
+        int id = methods.size();
+        methods.add(method);
+        fingerprints.add(fingerprint);
+        for (long feature : fingerprint.features) {
+            int[] posting = postings.get(feature);
+            if (posting == null) {
+                posting = new int[4];
+            } else if (posting[0] > maxPosting) {
+                continue; // too common to tell anything, stop collecting
+            } else if (posting[0] + 1 == posting.length) {
+                posting = Arrays.copyOf(posting, posting.length * 2);
+            }
+            posting[++posting[0]] = id;
+            postings.put(feature, posting);
+        }
+    }
+
+    // Groups of at least two methods, in the order their first methods were added
+    public List<Group> groups() {
+        int n = methods.size();
+        int[] parent = new int[n];
+        for (int i = 0; i < n; ++i) parent[i] = i;
+
+        Map<Long, Integer> byHash = new HashMap<>();
+        for (int i = 0; i < n; ++i) {
+            Integer first = byHash.putIfAbsent(fingerprints.get(i).graphHash, i);
+            if (first != null) union(parent, first, i);
+        }
+
+        // Features of each method that made it into the index
+        int[] indexed = new int[n];
+        long[] pairs = new long[16];
+        int pairCount = 0;
+        for (int[] posting : postings.values()) {
+            int size = posting[0];
+            if (size > maxPosting) continue;
+            for (int a = 1; a <= size; ++a) {
+                ++indexed[posting[a]];
+                for (int b = a + 1; b <= size; ++b) {
+                    if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    pairs[pairCount++] = ((long) posting[a] << 32) | posting[b];
+                }
+            }
+        }
+
+        // Each pair appears once per shared feature
+        Arrays.sort(pairs, 0, pairCount);
+        for (int i = 0; i < pairCount; ) {
+            int j = i;
+            while (j < pairCount && pairs[j] == pairs[i]) ++j;
+            int a = (int) (pairs[i] >>> 32);
+            int b = (int) pairs[i];
+            int shared = j - i;
+            if (shared >= minSimilarity * (indexed[a] + indexed[b] - shared)) union(parent, a, b);
+            i = j;
+        }
+
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < n; ++i) {
+            components.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(i);
+        }
+        List<Group> groups = new ArrayList<>();
+        for (List<Integer> members : components.values()) {
+            if (members.size() < 2) continue;
+            long hash = fingerprints.get(members.get(0)).graphHash;
+            boolean exact = true;
+            List<String> names = new ArrayList<>(members.size());
+            for (int m : members) {
+                exact &= fingerprints.get(m).graphHash == hash;
+                names.add(methods.get(m));
+            }
+            groups.add(new Group(exact, names));
+        }
+        return groups;
+    }
+
+    // {"methods":<seen>,"indexed":<n>,"groups":[{"exact":b,"methods":[...]},...]}
+    public void writeReport(Writer out) throws IOException {
+        out.append("{\"methods\":").append(Integer.toString(seen));
+        out.append(",\"indexed\":").append(Integer.toString(methods.size()));
+        out.append(",\"groups\":[");
+        List<Group> groups = groups();
+        for (int g = 0; g < groups.size(); ++g) {
+            if (g > 0) out.append(",");
+            Group group = groups.get(g);
+            out.append("{\"exact\":").append(Boolean.toString(group.exact)).append(",\"methods\":[");
+            for (int m = 0; m < group.methods.size(); ++m) {
+                if (m > 0) out.append(",");
+                Json.appendString(out, group.methods.get(m));
+            }
+            out.append("]}");
+        }
+        out.append("]}\n");
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        // The smaller root wins, so each group is named after its first method
+        if (a < b) parent[b] = a;
+        else parent[a] = b;
+    }
+}
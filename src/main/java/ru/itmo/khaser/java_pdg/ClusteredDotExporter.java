@@ -0,0 +1,251 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// DOT for graphs too large to lay out at once. Nodes are nested into
+// "subgraph cluster_*" blocks by control region: every node that others are
+// control dependent on heads a cluster of them. The regions form a tree,
+// spanned breadth-first from ENTRY over the control dependences.
+//
+// The output is split into pages of at most about maxPageNodes nodes and
+// maxDepth nested clusters, written one digraph after another (dot -O renders
+// each to its own file). A region that does not fit on its page is left as a
+// summary node saying which page continues it, control edges into it end at
+// that node. Like DotExporter, only reachable nodes and control edges are shown.
+public class ClusteredDotExporter implements PDGExporter {
+    public static final int MAX_PAGE_NODES = 400;
+    public static final int MAX_DEPTH = 6;
+
+    private final int maxPageNodes;
+    private final int maxDepth;
+
+    public ClusteredDotExporter() {
+        this(MAX_PAGE_NODES, MAX_DEPTH);
+    }
+
+    public ClusteredDotExporter(int maxPageNodes, int maxDepth) {
+        this.maxPageNodes = maxPageNodes;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public void export(PDG pdg, String title, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        export(pdg, title, writer);
+        writer.flush();
+    }
+
+    public void export(PDG pdg, String title, Writer out) throws IOException {
+        if (title != null) {
+            out.append("// ").append(title.replace("\n", " ")).append("\n");
+        }
+        if (pdg.isDegraded()) {
+            out.append("// fallback: ").append(pdg.degradation()).append("\n");
+        }
+        new Pages(pdg, out).write();
+    }
+
+    @Override
+    public String fileExtension() {
+        return "dot";
+    }
+
+    // A page shows the children of owner from its from-th child on
+    private static class Page {
+        final int owner;
+        final int from;
+
+        Page(int owner, int from) {
+            this.owner = owner;
+            this.from = from;
+        }
+    }
+
+    private class Pages {
+        private final PDG pdg;
+        private final Writer out;
+        private final int n;
+        private final int[] childOffsets; // children of v are children[childOffsets[v]..childOffsets[v + 1])
+        private final int[] children;
+        private final int[] parent;
+        private final int[] size;         // nodes in the region of v, v included
+        private final List<Page> pages = new ArrayList<>();
+
+        // State of the page being written; stamps are the page number
+        private final int[] onPage;
+        private final int[] summarized;
+        private final int[] summaryOf;
+        private int stamp;
+        private int count;                // nodes and summaries on the page, not counting its owner
+        private int[] pageNodes = new int[16];
+        private int pageNodeCount;
+
+        Pages(PDG pdg, Writer out) {
+            this.pdg = pdg;
+            this.out = out;
+            this.n = pdg.graph.nodeCount;
+            this.parent = new int[n];
+            this.size = new int[n];
+            this.onPage = new int[n];
+            this.summarized = new int[n];
+            this.summaryOf = new int[n];
+
+            // Breadth-first over control dependences from ENTRY (node 0), then
+            // from reachable nodes no control dependence leads to
+            Arrays.fill(parent, -2);
+            int[] order = new int[n];
+            int visited = 0;
+            for (int root = 0; root < n; ++root) {
+                if (parent[root] != -2 || !pdg.nodes.get(root).reachable) continue;
+                parent[root] = root == 0 ? -1 : 0;
+                int head = visited;
+                order[visited++] = root;
+                while (head < visited) {
+                    int v = order[head++];
+                    CsrGraph.Plane control = pdg.graph.control;
+                    for (int e = control.outBegin(v); e < control.outEnd(v); ++e) {
+                        int t = control.target(e);
+                        if (parent[t] != -2 || !pdg.nodes.get(t).reachable) continue;
+                        parent[t] = v;
+                        order[visited++] = t;
+                    }
+                }
+            }
+
+            this.childOffsets = new int[n + 1];
+            for (int v = 0; v < n; ++v) {
+                if (parent[v] >= 0) ++childOffsets[parent[v] + 1];
+            }
+            for (int v = 0; v < n; ++v) childOffsets[v + 1] += childOffsets[v];
+            this.children = new int[childOffsets[n]];
+            int[] pos = Arrays.copyOf(childOffsets, n);
+            for (int v = 0; v < n; ++v) {
+                if (parent[v] >= 0) children[pos[parent[v]]++] = v;
+            }
+            for (int i = visited - 1; i >= 0; --i) {
+                int v = order[i];
+                size[v] += 1;
+                if (parent[v] >= 0) size[parent[v]] += size[v];
+            }
+        }
+
+        void write() throws IOException {
+            if (n == 0 || !pdg.nodes.get(0).reachable) {
+                out.append("digraph PDG {\n}\n");
+                return;
+            }
+            pages.add(new Page(0, 0));
+            for (int p = 0; p < pages.size(); ++p) {
+                Page page = pages.get(p);
+                stamp = p + 1;
+                pageNodeCount = 0;
+                out.append(p == 0 ? "digraph PDG {\n" : "\n// page " + (p + 1) + "\ndigraph PDG_page" + (p + 1) + " {\n");
+                out.append("  rankdir=TB;\n");
+                out.append("  node [shape=box];\n");
+                out.append("\n");
+                // The owner of a continued region is repeated for context
+                writeNode(page.owner, p == 0 ? "" : ", style=dashed", "  ");
+                count = 0;
+                fillRegion(page.owner, page.from, 0, "  ");
+                out.append("\n");
+                writeEdges();
+                out.append("}\n");
+            }
+        }
+
+        private void fillRegion(int u, int from, int depth, String indent) throws IOException {
+            for (int i = childOffsets[u] + from; i < childOffsets[u + 1]; ++i) {
+                int c = children[i];
+                // Starts a new page when c would fit on one, but not on this one
+                if (count + size[c] > maxPageNodes && size[c] <= maxPageNodes) {
+                    int rest = 0;
+                    for (int j = i; j < childOffsets[u + 1]; ++j) {
+                        rest += size[children[j]];
+                        markSummarized(children[j]);
+                    }
+                    writeSummary(new Page(u, i - childOffsets[u]), "... " + rest + " more nodes", indent);
+                    return;
+                }
+                if (childOffsets[c] == childOffsets[c + 1]) {
+                    writeNode(c, "", indent);
+                } else {
+                    writeRegion(c, depth, indent);
+                }
+            }
+        }
+
+        private void writeRegion(int c, int depth, String indent) throws IOException {
+            out.append(indent).append("subgraph cluster_").append(Integer.toString(c)).append(" {\n");
+            String inner = indent + "  ";
+            out.append(inner).append("label=\"").append(DotExporter.escapeLabel(pdg.nodes.get(c).label())).append("\";\n");
+            writeNode(c, "", inner);
+            if (depth + 1 >= maxDepth) {
+                for (int j = childOffsets[c]; j < childOffsets[c + 1]; ++j) markSummarized(children[j]);
+                writeSummary(new Page(c, 0), (size[c] - 1) + " nodes", inner);
+            } else {
+                fillRegion(c, 0, depth + 1, inner);
+            }
+            out.append(indent).append("}\n");
+        }
+
+        private void writeNode(int v, String style, String indent) throws IOException {
+            onPage[v] = stamp;
+            ++count;
+            if (pageNodeCount == pageNodes.length) pageNodes = Arrays.copyOf(pageNodes, pageNodeCount * 2);
+            pageNodes[pageNodeCount++] = v;
+            out.append(indent).append("node").append(Integer.toString(v)).append(" [label=\"");
+            out.append(DotExporter.escapeLabel(pdg.nodes.get(v).label()));
+            out.append("\"").append(style).append("];\n");
+        }
+
+        private void writeSummary(Page continued, String text, String indent) throws IOException {
+            pages.add(continued);
+            int page = pages.size();
+            ++count;
+            out.append(indent).append("page").append(Integer.toString(page));
+            out.append(" [label=\"").append(text).append(", page ").append(Integer.toString(page));
+            out.append("\", shape=folder];\n");
+        }
+
+        // Nodes in the region of v are shown by the summary written next
+        private void markSummarized(int v) {
+            summarized[v] = stamp;
+            summaryOf[v] = pages.size() + 1;
+        }
+
+        // Control edges between nodes of the page, and to the summaries of
+        // regions continued elsewhere; edges to nodes on earlier pages are left out
+        private void writeEdges() throws IOException {
+            CsrGraph.Plane control = pdg.graph.control;
+            Set<Long> toSummaries = new HashSet<>();
+            for (int k = 0; k < pageNodeCount; ++k) {
+                int v = pageNodes[k];
+                for (int e = control.outBegin(v); e < control.outEnd(v); ++e) {
+                    int t = control.target(e);
+                    int x = t;
+                    while (x >= 0 && summarized[x] != stamp && onPage[x] != stamp) x = parent[x];
+                    if (x < 0) continue;
+                    if (summarized[x] == stamp) {
+                        int summary = summaryOf[x];
+                        if (!toSummaries.add((long) v << 32 | summary)) continue;
+                        out.append("  node").append(Integer.toString(v)).append(" -> page").append(Integer.toString(summary));
+                        out.append(" [label=\"\", color=blue, style=dashed];\n");
+                    } else if (x == t) {
+                        out.append("  node").append(Integer.toString(v)).append(" -> node").append(Integer.toString(t));
+                        out.append(" [label=\"\", color=blue];\n");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Arrays;
+
+// Control dependences of a CFG, derived from its post-dominator tree.
+//
+// Immediate post-dominators are computed with the iterative algorithm of
+// Cooper, Harvey and Kennedy on the reverse CFG rooted at EXIT, with the
+// usual virtual ENTRY -> EXIT edge so that top-level statements depend on
+// ENTRY. Then for every CFG edge a -> b, the nodes on the tree path from b
+// up to, but excluding, ipdom(a) are control dependent on a (Ferrante,
+// Ottenstein and Warren). Nodes not reachable from ENTRY get no dependences,
+// and loop predicates are not reported as dependent on themselves.
+class ControlDependence {
+    private final CsrGraph.Plane cfg;
+    private final int nodeCount;
+    private final int entry;
+    private final int exit;
+    private final boolean[] reachable;
+    private final boolean[] toExit;  // has a virtual edge to EXIT
+    private final int[] postorder;   // reverse CFG post-order number
+    private final int[] ipdom;       // -1 for EXIT and unreachable nodes
+    private final BuildBudget budget;
+
+    ControlDependence(CsrGraph.Plane cfg, int nodeCount, int entry, int exit, BuildBudget budget) {
+        this.cfg = cfg;
+        this.budget = budget;
+        this.nodeCount = nodeCount;
+        this.entry = entry;
+        this.exit = exit;
+        this.reachable = new boolean[nodeCount];
+        this.toExit = new boolean[nodeCount];
+        this.postorder = new int[nodeCount];
+        this.ipdom = new int[nodeCount];
+    }
+
+    // Adds every dependence to edges as controller -> dependent
+    void solve(CsrGraph.EdgeBuffer edges) {
+        int[] forward = forwardPostorder();
+        int[] order = reverseCfgOrder(forward);
+        postDominators(order);
+
+        int[] lastSeen = new int[nodeCount];
+        Arrays.fill(lastSeen, -1);
+        for (int a = 0; a < nodeCount; ++a) {
+            if (!reachable[a]) continue;
+            budget.checkTime();
+            for (int e = cfg.outBegin(a); e < cfg.outEnd(a); ++e) {
+                for (int runner = cfg.target(e); runner != ipdom[a] && runner != -1; runner = ipdom[runner]) {
+                    if (runner != a && lastSeen[runner] != a) {
+                        lastSeen[runner] = a;
+                        budget.checkEdges(edges.size() + 1);
+                        edges.add(a, runner, -1);
+                    }
+                }
+            }
+        }
+    }
+
+    // Nodes reachable from ENTRY in the order a depth-first search finishes them
+    private int[] forwardPostorder() {
+        int[] post = new int[nodeCount];
+        int count = 0;
+        int[] stack = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+        int depth = 0;
+        stack[depth++] = entry;
+        reachable[entry] = true;
+        nextEdge[entry] = cfg.outBegin(entry);
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            if (nextEdge[v] < cfg.outEnd(v)) {
+                int s = cfg.target(nextEdge[v]++);
+                if (!reachable[s]) {
+                    reachable[s] = true;
+                    nextEdge[s] = cfg.outBegin(s);
+                    stack[depth++] = s;
+                }
+            } else {
+                post[count++] = v;
+                --depth;
+            }
+        }
+        reachable[exit] = true;
+        return Arrays.copyOf(post, count);
+    }
+
+    // Reverse post-order of the reverse CFG from EXIT over reachable nodes.
+    // A node without successors (a throw, or a statement the CFG does not
+    // model) gets a virtual edge to EXIT. A node that still cannot reach EXIT
+    // (an infinite loop) gets one too; candidates are tried in forward
+    // post-order, so the deepest node of such a loop is picked and the rest
+    // of the loop ends up under it.
+    private int[] reverseCfgOrder(int[] forward) {
+        int[] post = new int[nodeCount];
+        boolean[] visited = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+
+        toExit[entry] = true;
+        int count = reverseSearch(exit, visited, stack, nextEdge, post, 0);
+        for (int v : forward) {
+            if (visited[v] || cfg.outEnd(v) > cfg.outBegin(v)) continue;
+            toExit[v] = true;
+            count = reverseSearch(v, visited, stack, nextEdge, post, count);
+        }
+        for (int v : forward) {
+            if (visited[v]) continue;
+            toExit[v] = true;
+            count = reverseSearch(v, visited, stack, nextEdge, post, count);
+        }
+        // Virtually attached nodes are children of EXIT, so EXIT finishes last
+        post[count++] = exit;
+
+        Arrays.fill(postorder, -1);
+        int[] order = new int[count];
+        for (int i = 0; i < count; ++i) {
+            postorder[post[i]] = i;
+            order[count - 1 - i] = post[i];
+        }
+        return order;
+    }
+
+    // Depth-first search over CFG predecessors, EXIT is left to the caller
+    private int reverseSearch(int root, boolean[] visited, int[] stack, int[] nextEdge, int[] post, int count) {
+        int depth = 0;
+        stack[depth++] = root;
+        visited[root] = true;
+        nextEdge[root] = cfg.inBegin(root);
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            if (nextEdge[v] < cfg.inEnd(v)) {
+                int p = cfg.source(nextEdge[v]++);
+                if (!visited[p] && reachable[p]) {
+                    visited[p] = true;
+                    nextEdge[p] = cfg.inBegin(p);
+                    stack[depth++] = p;
+                }
+            } else {
+                if (v != exit) post[count++] = v;
+                --depth;
+            }
+        }
+        return count;
+    }
+
+    // Cooper, Harvey, Kennedy, "A Simple, Fast Dominance Algorithm", on the
+    // reverse CFG: the predecessors there are CFG successors
+    private void postDominators(int[] order) {
+        Arrays.fill(ipdom, -1);
+        ipdom[exit] = exit;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int v : order) {
+                if (v == exit) continue;
+                budget.checkTime();
+                int idom = toExit[v] ? exit : -1;
+                for (int e = cfg.outBegin(v); e < cfg.outEnd(v); ++e) {
+                    int s = cfg.target(e);
+                    if (ipdom[s] == -1) continue;
+                    idom = idom == -1 ? s : intersect(s, idom);
+                }
+                if (idom != ipdom[v]) {
+                    ipdom[v] = idom;
+                    changed = true;
+                }
+            }
+        }
+        ipdom[exit] = -1;
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (postorder[a] < postorder[b]) a = ipdom[a];
+            while (postorder[b] < postorder[a]) b = ipdom[b];
+        }
+        return a;
+    }
+}
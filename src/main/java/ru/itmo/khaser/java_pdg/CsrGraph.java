@@ -0,0 +1,220 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.*;
+
+// Compressed sparse row storage of PDG edges, one plane per PDGEdge.EdgeType,
+// plus the control flow graph the control dependences were derived from.
+// Out-edges of node v are the slice [outBegin(v), outEnd(v)) of targets,
+// in-edges are [inBegin(v), inEnd(v)) of sources. Edges of one node keep the
+// order in which they were added. There is at most one edge per source and
+// target in a plane; a DATA edge carries the ids of all variables it is for.
+public class CsrGraph {
+    public static class Plane {
+        final int[] outOffsets;
+        final int[] targets;
+        final int[] inOffsets;
+        final int[] sources;
+        final int[] inEdges;    // out-edge index of each in-edge, null for planes without variables
+        final int[] varOffsets; // variables of out-edge e are varIds[varOffsets[e]..varOffsets[e + 1]), or null
+        final int[] varIds;
+
+        Plane(int[] outOffsets, int[] targets, int[] inOffsets, int[] sources,
+              int[] inEdges, int[] varOffsets, int[] varIds) {
+            this.outOffsets = outOffsets;
+            this.targets = targets;
+            this.inOffsets = inOffsets;
+            this.sources = sources;
+            this.inEdges = inEdges;
+            this.varOffsets = varOffsets;
+            this.varIds = varIds;
+        }
+
+        public int edgeCount() { return targets.length; }
+
+        public int outBegin(int v) { return outOffsets[v]; }
+        public int outEnd(int v) { return outOffsets[v + 1]; }
+        public int target(int e) { return targets[e]; }
+
+        public int inBegin(int v) { return inOffsets[v]; }
+        public int inEnd(int v) { return inOffsets[v + 1]; }
+        public int source(int e) { return sources[e]; }
+
+        // Variables of out-edge e are var(i) for i in [outVarBegin(e), outVarEnd(e)), of in-edge e
+        // likewise with inVarBegin and inVarEnd; empty for CONTROL
+        public int outVarBegin(int e) { return varOffsets == null ? 0 : varOffsets[e]; }
+        public int outVarEnd(int e) { return varOffsets == null ? 0 : varOffsets[e + 1]; }
+        public int inVarBegin(int e) { return varOffsets == null ? 0 : varOffsets[inEdges[e]]; }
+        public int inVarEnd(int e) { return varOffsets == null ? 0 : varOffsets[inEdges[e] + 1]; }
+        public int var(int i) { return varIds[i]; }
+
+        public boolean outHasVar(int e, int varId) {
+            for (int i = outVarBegin(e); i < outVarEnd(e); ++i) {
+                if (varIds[i] == varId) return true;
+            }
+            return false;
+        }
+
+        public boolean inHasVar(int e, int varId) {
+            return varOffsets != null && outHasVar(inEdges[e], varId);
+        }
+    }
+
+    // Growable coordinate list of one plane, compressed by toPlane
+    static class EdgeBuffer {
+        private int[] src = new int[16];
+        private int[] dst = new int[16];
+        private int[] var; // null unless the plane carries variables
+        private int size;
+
+        EdgeBuffer(boolean withVars) {
+            this.var = withVars ? new int[16] : null;
+        }
+
+        void add(int source, int target, int varId) {
+            if (size == src.length) {
+                src = Arrays.copyOf(src, size * 2);
+                dst = Arrays.copyOf(dst, size * 2);
+                if (var != null) var = Arrays.copyOf(var, size * 2);
+            }
+            src[size] = source;
+            dst[size] = target;
+            if (var != null) var[size] = varId;
+            ++size;
+        }
+
+        int size() { return size; }
+
+        // Edges with the same source and target are merged into one, in the
+        // place of the first of them. Its variables are those of all merged
+        // edges, in the order they were added, without repeats
+        Plane toPlane(int nodeCount) {
+            // Added edges grouped by source, in the order they were added
+            int[] addedOffsets = new int[nodeCount + 1];
+            for (int i = 0; i < size; ++i) ++addedOffsets[src[i] + 1];
+            for (int v = 0; v < nodeCount; ++v) addedOffsets[v + 1] += addedOffsets[v];
+            int[] added = new int[size];
+            int[] pos = Arrays.copyOf(addedOffsets, nodeCount);
+            for (int i = 0; i < size; ++i) added[pos[src[i]]++] = i;
+
+            // Number the merged edges by source
+            int[] edgeOf = new int[size];
+            int[] firstOf = new int[size];  // added edge each merged edge is in the place of
+            int[] seenFrom = new int[nodeCount]; // 1 + last source with an edge to t
+            int[] edgeTo = new int[nodeCount];
+            int[] outOffsets = new int[nodeCount + 1];
+            int m = 0;
+            for (int v = 0; v < nodeCount; ++v) {
+                for (int k = addedOffsets[v]; k < addedOffsets[v + 1]; ++k) {
+                    int i = added[k];
+                    if (seenFrom[dst[i]] != v + 1) {
+                        seenFrom[dst[i]] = v + 1;
+                        edgeTo[dst[i]] = m;
+                        firstOf[m++] = i;
+                    }
+                    edgeOf[i] = edgeTo[dst[i]];
+                }
+                outOffsets[v + 1] = m;
+            }
+
+            int[] targets = new int[m];
+            int[] inOffsets = new int[nodeCount + 1];
+            for (int e = 0; e < m; ++e) {
+                targets[e] = dst[firstOf[e]];
+                ++inOffsets[targets[e] + 1];
+            }
+            for (int v = 0; v < nodeCount; ++v) inOffsets[v + 1] += inOffsets[v];
+            int[] sources = new int[m];
+            int[] inEdges = var != null ? new int[m] : null;
+            pos = Arrays.copyOf(inOffsets, nodeCount);
+            for (int i = 0; i < size; ++i) {
+                int e = edgeOf[i];
+                if (firstOf[e] != i) continue;
+                int r = pos[dst[i]]++;
+                sources[r] = src[i];
+                if (inEdges != null) inEdges[r] = e;
+            }
+            if (var == null) {
+                return new Plane(outOffsets, targets, inOffsets, sources, null, null, null);
+            }
+
+            int[] varOffsets = new int[m + 1];
+            for (int i = 0; i < size; ++i) ++varOffsets[edgeOf[i] + 1];
+            for (int e = 0; e < m; ++e) varOffsets[e + 1] += varOffsets[e];
+            int[] varIds = new int[size];
+            int[] varEnd = Arrays.copyOf(varOffsets, m);
+            boolean repeats = false;
+            for (int i = 0; i < size; ++i) {
+                int e = edgeOf[i];
+                boolean repeat = false;
+                for (int j = varOffsets[e]; j < varEnd[e] && !repeat; ++j) repeat = varIds[j] == var[i];
+                if (repeat) {
+                    repeats = true;
+                } else {
+                    varIds[varEnd[e]++] = var[i];
+                }
+            }
+            if (repeats) {
+                int k = 0;
+                for (int e = 0; e < m; ++e) {
+                    int begin = varOffsets[e];
+                    varOffsets[e] = k;
+                    for (int j = begin; j < varEnd[e]; ++j) varIds[k++] = varIds[j];
+                }
+                varOffsets[m] = k;
+                varIds = Arrays.copyOf(varIds, k);
+            }
+            return new Plane(outOffsets, targets, inOffsets, sources, inEdges, varOffsets, varIds);
+        }
+    }
+
+    final int nodeCount;
+    final Plane cfg;
+    final Plane control;
+    final Plane data;
+    final String[] vars;
+
+    CsrGraph(int nodeCount, Plane cfg, Plane control, Plane data, String[] vars) {
+        this.nodeCount = nodeCount;
+        this.cfg = cfg;
+        this.control = control;
+        this.data = data;
+        this.vars = vars;
+    }
+
+    public Plane plane(PDGEdge.EdgeType type) {
+        return type == PDGEdge.EdgeType.CONTROL ? control : data;
+    }
+
+    public int edgeCount() {
+        return control.edgeCount() + data.edgeCount();
+    }
+
+    public String varName(int varId) {
+        return varId < 0 ? "" : vars[varId];
+    }
+
+    // Names of the variables of out-edge e, separated by ", "
+    public String varNames(Plane plane, int e) {
+        if (plane.outVarEnd(e) - plane.outVarBegin(e) == 1) return vars[plane.var(plane.outVarBegin(e))];
+        var names = new StringBuilder();
+        for (int i = plane.outVarBegin(e); i < plane.outVarEnd(e); ++i) {
+            if (names.length() > 0) names.append(", ");
+            names.append(vars[plane.var(i)]);
+        }
+        return names.toString();
+    }
+
+    // Materializes edges as objects, grouped by plane and source node
+    List<PDGEdge> edges(List<PDGNode> nodes) {
+        List<PDGEdge> edges = new ArrayList<>(edgeCount());
+        for (PDGEdge.EdgeType type : PDGEdge.EdgeType.values()) {
+            Plane plane = plane(type);
+            for (int v = 0; v < nodeCount; ++v) {
+                for (int e = plane.outBegin(v); e < plane.outEnd(v); ++e) {
+                    edges.add(new PDGEdge(nodes.get(v), nodes.get(plane.target(e)), type, varNames(plane, e)));
+                }
+            }
+        }
+        return edges;
+    }
+}
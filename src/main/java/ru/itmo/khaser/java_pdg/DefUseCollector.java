@@ -0,0 +1,106 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.*;
+
+// Collects the variables used and defined by a statement in one AST pass.
+// Every name expression is a use; declarators and assignments to a plain
+// name are definitions. Names are interned into the method's symbol table,
+// and each statement gets duplicate-free id arrays in first-seen order.
+class DefUseCollector extends VoidVisitorAdapter<Void> {
+    private final Map<String, Integer> varIds = new HashMap<>();
+    private final List<String> varNames = new ArrayList<>();
+
+    private int[] uses = new int[16];
+    private int useCount;
+    private int[] defs = new int[16];
+    private int defCount;
+    // Statement stamp per variable, so that duplicates are found without a set
+    private int[] usedStamp = new int[16];
+    private int[] definedStamp = new int[16];
+    private int stamp;
+
+    // Starts a new statement; parts are then passed to collect
+    void begin() {
+        ++stamp;
+        useCount = 0;
+        defCount = 0;
+    }
+
+    void collect(Node part) {
+        part.accept(this, null);
+    }
+
+    int[] uses() {
+        return Arrays.copyOf(uses, useCount);
+    }
+
+    int[] defs() {
+        return Arrays.copyOf(defs, defCount);
+    }
+
+    int varCount() {
+        return varNames.size();
+    }
+
+    int find(String name) {
+        Integer id = varIds.get(name);
+        return id != null ? id : -1;
+    }
+
+    String[] varNames() {
+        return varNames.toArray(new String[0]);
+    }
+
+    @Override
+    public void visit(NameExpr n, Void arg) {
+        int var = intern(n.getNameAsString());
+        if (usedStamp[var] != stamp) {
+            usedStamp[var] = stamp;
+            if (useCount == uses.length) uses = Arrays.copyOf(uses, useCount * 2);
+            uses[useCount++] = var;
+        }
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(VariableDeclarator n, Void arg) {
+        define(n.getNameAsString());
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(AssignExpr n, Void arg) {
+        if (n.getTarget() instanceof NameExpr) {
+            define(((NameExpr) n.getTarget()).getNameAsString());
+        }
+        super.visit(n, arg);
+    }
+
+    private void define(String name) {
+        int var = intern(name);
+        if (definedStamp[var] != stamp) {
+            definedStamp[var] = stamp;
+            if (defCount == defs.length) defs = Arrays.copyOf(defs, defCount * 2);
+            defs[defCount++] = var;
+        }
+    }
+
+    private int intern(String name) {
+        Integer id = varIds.get(name);
+        if (id != null) return id;
+        int var = varNames.size();
+        varIds.put(name, var);
+        varNames.add(name);
+        if (var == usedStamp.length) {
+            usedStamp = Arrays.copyOf(usedStamp, var * 2);
+            definedStamp = Arrays.copyOf(definedStamp, var * 2);
+        }
+        return var;
+    }
+}
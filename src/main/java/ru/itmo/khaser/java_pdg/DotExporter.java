@@ -2,65 +2,91 @@ package ru.itmo.khaser.java_pdg;
 
 import ru.itmo.khaser.java_pdg.PDGEdge.EdgeType;
 
-public class DotExporter {
-
-    public String export(PDG pdg) {
-        StringBuilder sb = new StringBuilder();
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class DotExporter implements PDGExporter {
+
+    @Override
+    public void export(PDG pdg, String title, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        export(pdg, title, writer);
+        writer.flush();
+    }
 
-        sb.append("digraph PDG {\n");
-        sb.append("  rankdir=TB;\n");
-        sb.append("  node [shape=box];\n");
-        sb.append("\n");
+    public void export(PDG pdg, String title, Writer out) throws IOException {
+        if (title != null) {
+            out.append("// ").append(title.replace("\n", " ")).append("\n");
+        }
+        if (pdg.isDegraded()) {
+            out.append("// fallback: ").append(pdg.degradation()).append("\n");
+        }
+        out.append("digraph PDG {\n");
+        out.append("  rankdir=TB;\n");
+        out.append("  node [shape=box];\n");
+        out.append("\n");
 
         for (PDGNode node : pdg.nodes) {
             if (!node.reachable) continue;
-            sb.append("  ").append(nodeId(node)).append(" [label=\"");
-            sb.append(escapeLabel(node.label));
-            sb.append("\"];\n");
+            out.append("  ").append(nodeId(node)).append(" [label=\"");
+            out.append(escapeLabel(node.label()));
+            out.append("\"];\n");
         }
 
-        sb.append("\n");
-
-        for (PDGEdge edge : pdg.edges) {
-            if (edge.type == EdgeType.DATA) continue;
-            sb.append("  ").append(nodeId(edge.source));
-            sb.append(" -> ");
-            sb.append(nodeId(edge.target));
-            sb.append(" [label=\"");
-
-            if (edge.type == PDGEdge.EdgeType.CONTROL) {
-                // sb.append("ctrl");
-                // if (!edge.label.isEmpty()) {
-                //     sb.append(": ").append(escapeLabel(edge.label));
-                // }
-            } else {
-                sb.append(escapeLabel(edge.label));
-            }
-
-            sb.append("\"");
-
-            if (edge.type == PDGEdge.EdgeType.CONTROL) {
-                sb.append(", color=blue");
-            } else {
-                sb.append(", color=red, style=dashed");
+        out.append("\n");
+
+        for (EdgeType type : EdgeType.values()) {
+            if (type == EdgeType.DATA) continue;
+            CsrGraph.Plane plane = pdg.graph.plane(type);
+            for (int v = 0; v < pdg.graph.nodeCount; ++v) {
+                for (int e = plane.outBegin(v); e < plane.outEnd(v); ++e) {
+                    out.append("  ").append(nodeId(v));
+                    out.append(" -> ");
+                    out.append(nodeId(plane.target(e)));
+                    out.append(" [label=\"");
+
+                    if (type == EdgeType.CONTROL) {
+                        // out.append("ctrl");
+                    } else {
+                        out.append(escapeLabel(pdg.graph.varNames(plane, e)));
+                    }
+
+                    out.append("\"");
+
+                    if (type == EdgeType.CONTROL) {
+                        out.append(", color=blue");
+                    } else {
+                        out.append(", color=red, style=dashed");
+                    }
+
+                    out.append("];\n");
+                }
             }
-
-            sb.append("];\n");
         }
 
-        sb.append("}\n");
+        out.append("}\n");
+    }
 
-        return sb.toString();
+    @Override
+    public String fileExtension() {
+        return "dot";
     }
 
     private String nodeId(PDGNode node) {
-        return "node" + node.id;
+        return nodeId(node.id);
     }
 
-    private String escapeLabel(String label) {
+    private String nodeId(int id) {
+        return "node" + id;
+    }
+
+    static String escapeLabel(String label) {
         return label.replace("\"", "\\\"")
                    .replace("\n", "\\n")
                    .replace("\r", "");
     }
 }
-
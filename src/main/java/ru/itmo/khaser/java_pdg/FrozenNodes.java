@@ -0,0 +1,83 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Nodes of a frozen PDG in a few flat arrays: kinds, source ranges, and all
+// labels in one string addressed by offset. Nothing of the AST is kept, so
+// the compilation unit can be collected as soon as its graphs are frozen.
+// get() creates a PDGNode view on every call.
+class FrozenNodes extends AbstractList<PDGNode> implements RandomAccess {
+    private static final PDGNode.Kind[] KINDS = PDGNode.Kind.values();
+
+    private final byte[] kinds;
+    private final int[] ranges;       // beginLine, beginColumn, endLine, endColumn per node
+    private final String labels;
+    private final int[] labelOffsets; // label of v is [labelOffsets[v], labelOffsets[v + 1])
+    private final BitSet reachable;
+
+    // Renders every label that has not been rendered yet
+    FrozenNodes(List<PDGNode> nodes) {
+        int n = nodes.size();
+        this.kinds = new byte[n];
+        this.ranges = new int[4 * n];
+        this.labelOffsets = new int[n + 1];
+        this.reachable = new BitSet(n);
+        var text = new StringBuilder();
+        for (int v = 0; v < n; ++v) {
+            PDGNode node = nodes.get(v);
+            kinds[v] = (byte) node.kind().ordinal();
+            ranges[4 * v] = node.beginLine();
+            ranges[4 * v + 1] = node.beginColumn();
+            ranges[4 * v + 2] = node.endLine();
+            ranges[4 * v + 3] = node.endColumn();
+            text.append(node.label());
+            labelOffsets[v + 1] = text.length();
+            if (node.reachable) reachable.set(v);
+        }
+        this.labels = text.toString();
+    }
+
+    FrozenNodes(byte[] kinds, int[] ranges, String labels, int[] labelOffsets, BitSet reachable) {
+        this.kinds = kinds;
+        this.ranges = ranges;
+        this.labels = labels;
+        this.labelOffsets = labelOffsets;
+        this.reachable = reachable;
+    }
+
+    // The same nodes with known line numbers moved by lineShift, also where
+    // labels start with them (see PDGNode.render)
+    FrozenNodes shiftLines(int lineShift) {
+        int n = size();
+        int[] shifted = ranges.clone();
+        int[] offsets = new int[n + 1];
+        var text = new StringBuilder(labels.length());
+        for (int v = 0; v < n; ++v) {
+            String label = labels.substring(labelOffsets[v], labelOffsets[v + 1]);
+            int line = ranges[4 * v];
+            if (line != 0) {
+                shifted[4 * v] += lineShift;
+                shifted[4 * v + 2] += lineShift;
+                String linePrefix = line + ": ";
+                if (label.startsWith(linePrefix)) label = (line + lineShift) + ": " + label.substring(linePrefix.length());
+            }
+            text.append(label);
+            offsets[v + 1] = text.length();
+        }
+        return new FrozenNodes(kinds, shifted, text.toString(), offsets, reachable);
+    }
+
+    @Override
+    public PDGNode get(int v) {
+        return new PDGNode(v, KINDS[kinds[v]], ranges[4 * v], ranges[4 * v + 1], ranges[4 * v + 2], ranges[4 * v + 3],
+                           labels.substring(labelOffsets[v], labelOffsets[v + 1]), reachable.get(v));
+    }
+
+    @Override
+    public int size() {
+        return kinds.length;
+    }
+}
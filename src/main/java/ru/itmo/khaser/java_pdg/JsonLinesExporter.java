@@ -0,0 +1,76 @@
+package ru.itmo.khaser.java_pdg;
+
+import ru.itmo.khaser.java_pdg.PDGEdge.EdgeType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// One JSON object per line: a graph header, then every node, then every edge.
+//
+//   {"graph":"<title>","nodes":3,"edges":2}
+//   {"node":0,"label":"ENTRY: f()","reachable":true}
+//   {"edge":"CONTROL","source":0,"target":2}
+//   {"edge":"DATA","source":2,"target":3,"vars":["x","y"]}
+//
+// The header of a graph built with a fallback (see BuildBudget) also has
+// "fallback":"control-only"|"summary" and "exceeded":"time"|"nodes"|"edges".
+public class JsonLinesExporter implements PDGExporter {
+
+    @Override
+    public void export(PDG pdg, String title, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        export(pdg, title, writer);
+        writer.flush();
+    }
+
+    public void export(PDG pdg, String title, Writer out) throws IOException {
+        out.append("{\"graph\":");
+        if (title != null) {
+            Json.appendString(out, title);
+        } else {
+            out.append("null");
+        }
+        out.append(",\"nodes\":").append(Integer.toString(pdg.nodes.size()));
+        out.append(",\"edges\":").append(Integer.toString(pdg.graph.edgeCount()));
+        if (pdg.isDegraded()) {
+            out.append(",\"fallback\":\"").append(pdg.fallback.name().toLowerCase().replace('_', '-'));
+            out.append("\",\"exceeded\":\"").append(pdg.exceeded).append("\"");
+        }
+        out.append("}\n");
+
+        for (PDGNode node : pdg.nodes) {
+            out.append("{\"node\":").append(Integer.toString(node.id)).append(",\"label\":");
+            Json.appendString(out, node.label());
+            out.append(",\"reachable\":").append(Boolean.toString(node.reachable)).append("}\n");
+        }
+
+        for (EdgeType type : EdgeType.values()) {
+            CsrGraph.Plane plane = pdg.graph.plane(type);
+            for (int v = 0; v < pdg.graph.nodeCount; ++v) {
+                for (int e = plane.outBegin(v); e < plane.outEnd(v); ++e) {
+                    out.append("{\"edge\":\"").append(type.name()).append("\"");
+                    out.append(",\"source\":").append(Integer.toString(v));
+                    out.append(",\"target\":").append(Integer.toString(plane.target(e)));
+                    if (type == EdgeType.DATA) {
+                        out.append(",\"vars\":[");
+                        for (int i = plane.outVarBegin(e); i < plane.outVarEnd(e); ++i) {
+                            if (i > plane.outVarBegin(e)) out.append(",");
+                            Json.appendString(out, pdg.graph.vars[plane.var(i)]);
+                        }
+                        out.append("]");
+                    }
+                    out.append("}\n");
+                }
+            }
+        }
+    }
+
+    @Override
+    public String fileExtension() {
+        return "jsonl";
+    }
+}
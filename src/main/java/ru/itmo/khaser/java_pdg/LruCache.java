@@ -0,0 +1,57 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Thread-safe LRU cache bounded by the total weight of its values
+class LruCache<K, V> {
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private long totalWeight;
+    private long hits;
+    private long misses;
+
+    LruCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return entry.value;
+    }
+
+    synchronized void put(K key, V value, long weight) {
+        Entry<V> old = map.remove(key);
+        if (old != null) totalWeight -= old.weight;
+        if (weight > maxWeight) return;
+
+        map.put(key, new Entry<>(value, weight));
+        totalWeight += weight;
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (totalWeight > maxWeight && it.hasNext()) {
+            totalWeight -= it.next().getValue().weight;
+            it.remove();
+        }
+    }
+
+    synchronized String stats() {
+        return "entries=" + map.size() + " weight=" + totalWeight + "/" + maxWeight
+            + " hits=" + hits + " misses=" + misses;
+    }
+}
@@ -5,37 +5,102 @@ import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
 
 public class Main {
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: java HelloWorld <java-file> [method-name]");
+            System.err.println("Usage: java HelloWorld [--format dot|dot-clustered|jsonl|bin] [--dump] [--lazy] [--ssa] [--metrics <file>] <java-file> [method-name]");
+            System.err.println("       java HelloWorld --slice backward|forward:<line> <java-file> [method-name]");
+            System.err.println("       java HelloWorld --batch [--format <f>] [--out <dir> | --store <file>] [--threads <n>] [--ssa] [--time-budget <ms>] [--max-nodes <n>] [--max-edges <n>] [--metrics <file>] [--clones <file>] [--cache <dir> [--cache-size <mb>]] <source-root-file-or-archive>...");
+            System.err.println("       java HelloWorld --lookup <store> \"<file>: <types>.<signature>@<line>\"");
+            System.err.println("       java HelloWorld --serve [--port <n>] [--threads <n>]");
+            System.err.println("       java HelloWorld --watch [--out <dir>] <source-root-or-file>...");
+            System.err.println("       java HelloWorld --sdg [--threads <n>] [--slice <file>:<line>] <source-root-or-file>...");
             System.err.println("If method-name is not provided, the first method will be used.");
             System.exit(1);
         }
 
-        String filePath = args[0];
-        String methodName = args.length > 1 ? args[1] : null;
+        if (args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("--lookup")) {
+            PDGStore.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("--serve")) {
+            PDGServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("--watch")) {
+            MethodWatcher.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("--sdg")) {
+            SDGBuilder.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        String format = "dot";
+        String slice = null;
+        boolean dump = false;
+        boolean lazy = false;
+        boolean ssa = false;
+        String metricsPath = null;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (args[i].equals("--slice") && i + 1 < args.length) {
+                slice = args[++i];
+            } else if (args[i].equals("--dump")) {
+                dump = true;
+            } else if (args[i].equals("--lazy")) {
+                lazy = true;
+            } else if (args[i].equals("--ssa")) {
+                ssa = true;
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsPath = args[++i];
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.isEmpty()) {
+            System.err.println("Missing <java-file>");
+            System.exit(1);
+        }
+
+        String filePath = positional.get(0);
+        String methodName = positional.size() > 1 ? positional.get(1) : null;
 
         try {
-            String code = new String(Files.readAllBytes(Paths.get(filePath)));
+            PDGExporter exporter = PDGExporter.forFormat(format);
+
+            var fileMetrics = new BuildMetrics(filePath);
+            var parse = fileMetrics.start(BuildMetrics.Phase.PARSE);
+            byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+            String code = new String(bytes, StandardCharsets.UTF_8);
 
             JavaParser parser = new JavaParser();
-            CompilationUnit cu = parser.parse(code).getResult().orElseThrow(
-                () -> new RuntimeException("Failed to parse the file")
-            );
-
-            Optional<MethodDeclaration> methodOpt;
-            if (methodName != null) {
-                methodOpt = cu.findAll(MethodDeclaration.class).stream()
-                    .filter(m -> m.getNameAsString().equals(methodName))
-                    .findFirst();
-            } else {
-                methodOpt = cu.findFirst(MethodDeclaration.class);
+            // --lazy parses just the method, the whole file only if it cannot be located
+            Optional<MethodDeclaration> methodOpt = lazy
+                ? MethodLocator.parseMethod(parser, code, methodName, fileMetrics) : Optional.empty();
+            if (methodOpt.isEmpty()) {
+                CompilationUnit cu = parser.parse(code).getResult().orElseThrow(
+                    () -> new RuntimeException("Failed to parse the file")
+                );
+                fileMetrics.bytesParsed = bytes.length;
+                methodOpt = findMethod(cu, methodName);
             }
+            parse.end();
 
             if (!methodOpt.isPresent()) {
                 System.err.println("Method not found: " + (methodName != null ? methodName : "(any)"));
@@ -44,19 +109,35 @@ public class Main {
 
             MethodDeclaration method = methodOpt.get();
 
-            PDGBuilder builder = new PDGBuilder(method);
+            var metrics = new BuildMetrics(method.getSignature().asString());
+            fileMetrics.addChild(metrics);
+            PDGBuilder builder = new PDGBuilder(method, metrics);
+            builder.setSsa(ssa);
             PDG pdg = builder.build();
 
-            for (var node : pdg.nodes) {
-                System.err.println(node);
+            if (dump) {
+                for (var node : pdg.nodes) {
+                    System.err.println(node);
+                }
+                for (var edge : pdg.edges()) {
+                    System.err.println(edge);
+                }
             }
-            for (var edge : pdg.edges) {
-                System.err.println(edge);
+
+            if (slice != null) {
+                printSlice(pdg, slice);
+            } else {
+                var export = metrics.start(BuildMetrics.Phase.EXPORT);
+                exporter.export(pdg, System.out);
+                System.out.flush();
+                export.end();
             }
 
-            DotExporter exporter = new DotExporter();
-            String dot = exporter.export(pdg);
-            System.out.println(dot);
+            if (metricsPath != null) {
+                try (var out = Files.newBufferedWriter(Paths.get(metricsPath))) {
+                    BuildMetrics.writeReport(List.of(fileMetrics), out);
+                }
+            }
 
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
@@ -67,5 +148,42 @@ public class Main {
             System.exit(1);
         }
     }
-}
 
+    // criterion is backward:<line> or forward:<line>, the slice starts at
+    // the first node whose statement begins on that line
+    private static void printSlice(PDG pdg, String criterion) {
+        int colon = criterion.indexOf(':');
+        String direction = colon < 0 ? "" : criterion.substring(0, colon);
+        if (!direction.equals("backward") && !direction.equals("forward")) {
+            throw new IllegalArgumentException("Slice criterion must be backward:<line> or forward:<line>");
+        }
+        int line = Integer.parseInt(criterion.substring(colon + 1));
+
+        PDGNode start = null;
+        for (PDGNode node : pdg.nodes) {
+            if (node.beginLine() == line) {
+                start = node;
+                break;
+            }
+        }
+        if (start == null) {
+            throw new IllegalArgumentException("No statement starts on line " + line);
+        }
+
+        Slicer slicer = pdg.slicer();
+        BitSet nodes = direction.equals("backward") ? slicer.backwardSlice(start.id) : slicer.forwardSlice(start.id);
+        for (int v = nodes.nextSetBit(0); v >= 0; v = nodes.nextSetBit(v + 1)) {
+            System.out.println(pdg.nodes.get(v));
+        }
+    }
+
+    // The first method named methodName, or the first method when methodName is null
+    static Optional<MethodDeclaration> findMethod(CompilationUnit cu, String methodName) {
+        if (methodName != null) {
+            return cu.findAll(MethodDeclaration.class).stream()
+                .filter(m -> m.getNameAsString().equals(methodName))
+                .findFirst();
+        }
+        return cu.findFirst(MethodDeclaration.class);
+    }
+}
@@ -0,0 +1,441 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Finds method declarations in source text without parsing it. A lexer skips
+// comments and literals and tracks the nesting of parentheses and braces; a
+// brace opens a type body, a method body or a plain block depending on the
+// tokens before it. Only the declaration found is then parsed, and its
+// positions are moved to where it is in the file.
+//
+// Declarations are reported in the order they start, which is the order of
+// findAll on the parsed file, including methods of nested, local and
+// anonymous classes. Scanning stops as soon as the next one is complete.
+class MethodLocator {
+    static class Location {
+        final String name;
+        final int begin;          // offset of the first token, annotations included
+        final int commentBegin;   // offset of the comment before it, -1 if none
+        final boolean inEnumConstant;
+        int end = -1;             // offset after the closing brace or semicolon
+        boolean trailingComment;  // a line comment after it is included in end
+
+        Location(String name, int begin, int commentBegin, boolean inEnumConstant) {
+            this.name = name;
+            this.begin = begin;
+            this.commentBegin = commentBegin;
+            this.inEnumConstant = inEnumConstant;
+        }
+
+        // The parser attaches one comment: the one at the end of the line
+        // if there is one, otherwise the one before
+        int textBegin() {
+            return commentBegin >= 0 && !trailingComment ? commentBegin : begin;
+        }
+    }
+
+    private enum FrameKind { TYPE, ENUM, ANNOTATION, METHOD, BLOCK, PARENS }
+
+    // One nesting level, with the tokens seen since its last boundary
+    private static class Frame {
+        final FrameKind kind;
+        final Location method; // the declaration a METHOD frame is the body of
+        final boolean inEnumConstant; // in the body of an enum constant
+        boolean inConstants;   // an ENUM frame before the semicolon ending its constants
+        int headerBegin = -1;
+        int headerComment = -1;
+        String typeKeyword;    // class, interface, @interface, enum or record
+        boolean sawNew;
+        int typeArguments;     // depth of < after new, where commas separate no arguments
+        boolean sawAssign;
+        boolean lastWasParens; // last token closed a parenthesized group
+        String lastIdentifier; // set if the last token was an identifier
+        String parensName;     // identifier before the last parenthesized group,
+                               // if only a throws clause follows it
+        boolean inThrows;
+        String pendingName;    // identifier before the group being read
+
+        Frame(FrameKind kind, Location method, boolean inEnumConstant) {
+            this.kind = kind;
+            this.method = method;
+            this.inEnumConstant = inEnumConstant;
+            this.inConstants = kind == FrameKind.ENUM;
+        }
+
+        boolean enumConstants() {
+            return kind == FrameKind.ENUM && inConstants;
+        }
+
+        void resetHeader() {
+            headerBegin = -1;
+            headerComment = -1;
+            typeKeyword = null;
+            sawNew = false;
+            typeArguments = 0;
+            sawAssign = false;
+            lastWasParens = false;
+            lastIdentifier = null;
+            parensName = null;
+            inThrows = false;
+        }
+    }
+
+    private final String code;
+    private final String methodName; // null for any method
+    private final List<Frame> stack = new ArrayList<>();
+    private final List<Location> found = new ArrayList<>();
+    private int returned;
+    private int pos;
+    private boolean afterDot; // the previous token was a '.', so Foo.class is no declaration
+    private boolean afterAt;  // the previous token was a '@', so @interface is an annotation type
+    private int commentBegin = -1; // last comment since the last token, unless on its line
+
+    MethodLocator(String code, String methodName) {
+        this.code = code;
+        this.methodName = methodName;
+        stack.add(new Frame(FrameKind.BLOCK, null, false)); // the compilation unit
+    }
+
+    // The first method named methodName, or the first method when methodName
+    // is null, parsed on its own with positions as in the whole file. Empty
+    // if the text around the method is not understood, then the caller has to
+    // parse the whole file. The text parsed is counted in metrics.bytesParsed.
+    // Comments of the enclosing type before the method's own comment are not
+    // part of the text, so unlike in the file they are not printed with it.
+    static Optional<MethodDeclaration> parseMethod(JavaParser parser, String code, String methodName, BuildMetrics metrics) {
+        var locator = new MethodLocator(code, methodName);
+        for (Location location = locator.next(); location != null; location = locator.next()) {
+            // findAll visits the members of an enum before the bodies of its
+            // constants, so a method there may not be the first one
+            if (location.inEnumConstant) return Optional.empty();
+            String text = code.substring(location.textBegin(), location.end);
+            metrics.bytesParsed += text.getBytes(StandardCharsets.UTF_8).length;
+            var method = parser.parseMethodDeclaration(text).getResult();
+            if (method.isPresent()) {
+                if (location.trailingComment || location.commentBegin >= 0) attachComment(method.get(), location.trailingComment);
+                Position start = locator.position(location.textBegin());
+                shift(method.get(), start.line - 1, start.column - 1);
+                return method;
+            }
+            // A constructor looks the same to the lexer, anything else is a surprise
+            Optional<BodyDeclaration<?>> declaration = parser.parseBodyDeclaration(text).getResult();
+            if (declaration.isEmpty() || !declaration.get().isConstructorDeclaration()) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    // The next declaration with a matching name, null at the end of the text
+    Location next() {
+        while (returned == found.size() || found.get(returned).end < 0) {
+            if (!scanToken()) {
+                // Unbalanced text, whatever is incomplete cannot be parsed
+                return returned < found.size() && found.get(returned).end >= 0 ? found.get(returned++) : null;
+            }
+        }
+        return found.get(returned++);
+    }
+
+    // Position of offset as the JavaParser lexer counts it, tabs are one column
+    Position position(int offset) {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < offset; ++i) {
+            char c = code.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 >= code.length() || code.charAt(i + 1) != '\n'))) {
+                ++line;
+                lineStart = i + 1;
+            }
+        }
+        return new Position(line, offset - lineStart + 1);
+    }
+
+    // Alone, the parser may give the comment included with the declaration
+    // to a node inside it, on the same line; in the file it goes to the declaration
+    private static void attachComment(MethodDeclaration method, boolean trailing) {
+        if (method.getComment().isPresent()) return;
+        List<Comment> comments = method.getAllContainedComments();
+        if (comments.isEmpty()) return;
+        Comment comment = comments.get(trailing ? comments.size() - 1 : 0);
+        // A trailing comment may be given to several nodes at once
+        method.walk(node -> {
+            if (node.getComment().orElse(null) == comment) node.removeComment();
+        });
+        method.setComment(comment);
+    }
+
+    // Moves a declaration parsed at line 1, column 1 to the given offsets;
+    // only its first line is shifted to the right. Comments are not child
+    // nodes, so they are moved along with the nodes, each once
+    private static void shift(MethodDeclaration method, int lines, int columns) {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        method.walk(nodes::add);
+        method.getComment().ifPresent(nodes::add);
+        nodes.addAll(method.getAllContainedComments());
+        for (Node node : nodes) {
+            node.getRange().ifPresent(range -> node.setRange(shift(range, lines, columns)));
+        }
+        if (method.getTokenRange().isEmpty()) return;
+        for (JavaToken token = method.getTokenRange().get().getBegin(); token != null; token = token.getNextToken().orElse(null)) {
+            if (token.getRange().isPresent()) token.setRange(shift(token.getRange().get(), lines, columns));
+        }
+    }
+
+    private static Range shift(Range range, int lines, int columns) {
+        return new Range(shift(range.begin, lines, columns), shift(range.end, lines, columns));
+    }
+
+    private static Position shift(Position position, int lines, int columns) {
+        return new Position(position.line + lines, position.line == 1 ? position.column + columns : position.column);
+    }
+
+    // Returns false at the end of the text
+    private boolean scanToken() {
+        skipTrivia();
+        if (pos >= code.length()) return false;
+        int start = pos;
+        char c = code.charAt(pos);
+        Frame top = stack.get(stack.size() - 1);
+        boolean qualified = afterDot;
+        boolean annotation = afterAt;
+        afterDot = c == '.';
+        afterAt = c == '@';
+
+        if (Character.isJavaIdentifierStart(c)) {
+            while (pos < code.length() && Character.isJavaIdentifierPart(code.charAt(pos))) ++pos;
+            String text = code.substring(start, pos);
+            identifier(top, start, annotation && text.equals("interface") ? "@interface" : text, qualified);
+            return true;
+        }
+        if (Character.isDigit(c)) {
+            while (pos < code.length() && (Character.isJavaIdentifierPart(code.charAt(pos)) || code.charAt(pos) == '.')) ++pos;
+            other(top, start);
+            return true;
+        }
+        if (c == '"') {
+            skipString();
+            other(top, start);
+            return true;
+        }
+        if (c == '\'') {
+            skipQuoted('\'');
+            other(top, start);
+            return true;
+        }
+
+        ++pos;
+        switch (c) {
+            case '(':
+                String name = top.lastIdentifier;
+                other(top, start);
+                top.pendingName = name;
+                stack.add(new Frame(FrameKind.PARENS, null, top.inEnumConstant));
+                break;
+            case ')':
+                if (top.kind == FrameKind.PARENS) {
+                    pop();
+                    Frame parent = stack.get(stack.size() - 1);
+                    parent.lastWasParens = true;
+                    parent.parensName = parent.pendingName;
+                }
+                break;
+            case '{':
+                openBrace(top);
+                break;
+            case '}':
+                if (stack.size() > 1) {
+                    Frame closed = pop();
+                    if (closed.kind == FrameKind.METHOD) complete(closed.method);
+                }
+                stack.get(stack.size() - 1).resetHeader();
+                break;
+            case ';':
+                if (isMemberLevel(top) && top.parensName != null && !top.sawAssign && top.typeKeyword == null) {
+                    complete(addMethod(top)); // no body
+                }
+                top.resetHeader();
+                top.inConstants = false;
+                break;
+            case ',':
+                // Separates arguments, and enum constants, but not type arguments
+                if ((top.kind == FrameKind.PARENS && top.typeArguments == 0) || top.enumConstants()) {
+                    top.resetHeader();
+                } else {
+                    other(top, start);
+                }
+                break;
+            case '=':
+                other(top, start);
+                top.sawAssign = true;
+                break;
+            case '<':
+                other(top, start);
+                if (top.sawNew) ++top.typeArguments;
+                break;
+            case '>':
+                other(top, start);
+                if (top.typeArguments > 0) --top.typeArguments;
+                break;
+            default:
+                other(top, start);
+        }
+        return true;
+    }
+
+    private void identifier(Frame top, int start, String text, boolean qualified) {
+        if (top.headerBegin < 0) {
+            top.headerBegin = start;
+            top.headerComment = commentBegin;
+        }
+        // @Foo(1) int x; is a field
+        if (top.parensName != null && !top.inThrows) {
+            if (text.equals("throws")) {
+                top.inThrows = true;
+            } else {
+                top.parensName = null;
+            }
+        }
+        if (!qualified) {
+            switch (text) {
+                case "class":
+                case "interface":
+                case "@interface":
+                case "enum":
+                    top.typeKeyword = text;
+                    break;
+                case "new":
+                    top.sawNew = true;
+                    break;
+                default:
+                    // record is a keyword only before the record's name
+                    if ("record".equals(top.lastIdentifier)) top.typeKeyword = "record";
+            }
+        }
+        top.lastWasParens = false;
+        top.lastIdentifier = text;
+    }
+
+    private void other(Frame top, int start) {
+        if (top.headerBegin < 0) {
+            top.headerBegin = start;
+            top.headerComment = commentBegin;
+        }
+        top.lastWasParens = false;
+        top.lastIdentifier = null;
+    }
+
+    private void openBrace(Frame top) {
+        Frame frame;
+        if (top.typeKeyword != null) {
+            FrameKind kind = top.typeKeyword.equals("enum") ? FrameKind.ENUM
+                : top.typeKeyword.equals("@interface") ? FrameKind.ANNOTATION : FrameKind.TYPE;
+            frame = new Frame(kind, null, top.inEnumConstant);
+        } else if (top.sawNew && top.lastWasParens) {
+            frame = new Frame(FrameKind.TYPE, null, top.inEnumConstant); // anonymous class
+        } else if (top.enumConstants()) {
+            frame = new Frame(FrameKind.TYPE, null, true); // enum constant with a body
+        } else if (isMemberLevel(top) && top.parensName != null && !top.sawAssign) {
+            frame = new Frame(FrameKind.METHOD, addMethod(top), top.inEnumConstant);
+        } else {
+            frame = new Frame(FrameKind.BLOCK, null, top.inEnumConstant);
+        }
+        top.resetHeader();
+        stack.add(frame);
+    }
+
+    private static boolean isMemberLevel(Frame frame) {
+        return frame.kind == FrameKind.TYPE || (frame.kind == FrameKind.ENUM && !frame.enumConstants());
+    }
+
+    // The declaration whose header top has just read
+    private Location addMethod(Frame top) {
+        var location = new Location(top.parensName, top.headerBegin, top.headerComment, top.inEnumConstant);
+        if (methodName == null || methodName.equals(location.name)) found.add(location);
+        return location;
+    }
+
+    // Ends the declaration at pos. A line comment after a declaration that
+    // fits on one line goes to it and is included too
+    private void complete(Location location) {
+        location.end = pos;
+        int end = pos;
+        while (end < code.length() && (code.charAt(end) == ' ' || code.charAt(end) == '\t')) ++end;
+        if (!code.startsWith("//", end)) return;
+        for (int i = location.begin; i < pos; ++i) {
+            if (code.charAt(i) == '\n' || code.charAt(i) == '\r') return;
+        }
+        while (end < code.length() && code.charAt(end) != '\n' && code.charAt(end) != '\r') ++end;
+        location.end = end;
+        location.trailingComment = true;
+    }
+
+    private Frame pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    // The parser attaches the last comment before a declaration to it, unless
+    // it is at the end of the line of the previous token or a blank line follows
+    private void skipTrivia() {
+        commentBegin = -1;
+        boolean newLine = pos == 0;
+        int linesAfterComment = 0;
+        while (pos < code.length()) {
+            char c = code.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                if (c == '\n' || (c == '\r' && !code.startsWith("\n", pos + 1))) {
+                    newLine = true;
+                    ++linesAfterComment;
+                }
+                ++pos;
+            } else if (code.startsWith("//", pos) || code.startsWith("/*", pos)) {
+                commentBegin = newLine ? pos : -1;
+                linesAfterComment = 0;
+                if (code.charAt(pos + 1) == '/') {
+                    while (pos < code.length() && code.charAt(pos) != '\n' && code.charAt(pos) != '\r') ++pos;
+                } else {
+                    int close = code.indexOf("*/", pos + 2);
+                    pos = close < 0 ? code.length() : close + 2;
+                }
+            } else {
+                break;
+            }
+        }
+        if (linesAfterComment > 1) commentBegin = -1;
+    }
+
+    private void skipString() {
+        if (!code.startsWith("\"\"\"", pos)) {
+            skipQuoted('"');
+            return;
+        }
+        pos += 3;
+        while (pos < code.length() && !code.startsWith("\"\"\"", pos)) {
+            pos += code.charAt(pos) == '\\' ? 2 : 1;
+        }
+        pos = Math.min(code.length(), pos + 3);
+    }
+
+    private void skipQuoted(char quote) {
+        ++pos;
+        while (pos < code.length() && code.charAt(pos) != quote && code.charAt(pos) != '\n') {
+            pos += code.charAt(pos) == '\\' ? 2 : 1;
+        }
+        pos = Math.min(code.length(), pos + 1);
+    }
+}
@@ -0,0 +1,298 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Watches source trees and keeps one PDG per method up to date.
+// Every method is fingerprinted by its source text; after a file changes only
+// methods whose fingerprint differs are rebuilt. A method that only moved to
+// other lines keeps its graph, with line numbers shifted (labels carry them).
+// A ChangeEvent lists what was added, removed, modified or moved.
+public class MethodWatcher {
+    public static class ChangeEvent {
+        public final Path file;
+        public final String name; // path relative to its watched root, see BatchRunner.collectSources
+        public final Map<String, PDG> added;
+        public final Map<String, PDG> modified;
+        public final Map<String, PDG> moved;
+        public final List<String> removed;
+
+        ChangeEvent(Path file, String name, Map<String, PDG> added, Map<String, PDG> modified,
+                    Map<String, PDG> moved, List<String> removed) {
+            this.file = file;
+            this.name = name;
+            this.added = added;
+            this.modified = modified;
+            this.moved = moved;
+            this.removed = removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && modified.isEmpty() && moved.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public interface Listener {
+        void onChange(ChangeEvent event);
+    }
+
+    private static class MethodState {
+        final String fingerprint;
+        final int line; // where the method begins
+        final PDG pdg;
+
+        MethodState(String fingerprint, int line, PDG pdg) {
+            this.fingerprint = fingerprint;
+            this.line = line;
+            this.pdg = pdg;
+        }
+    }
+
+    private static final long DEBOUNCE_MS = 15;
+
+    private final Listener listener;
+    private final JavaParser parser = new JavaParser();
+    private final Map<Path, Map<String, MethodState>> files = new HashMap<>();
+    private List<Path> roots = List.of();
+
+    public MethodWatcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    public static void main(String[] args) {
+        Path outputDir = null;
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--out") && i + 1 < args.length) {
+                outputDir = Paths.get(args[++i]);
+            } else {
+                roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: java Main --watch [--out <dir>] <source-root-or-file>...");
+            System.exit(1);
+        }
+
+        Path out = outputDir;
+        var watcher = new MethodWatcher(event -> {
+            for (String key : event.added.keySet()) System.out.println("added " + event.file + ": " + key);
+            for (String key : event.modified.keySet()) System.out.println("modified " + event.file + ": " + key);
+            for (String key : event.moved.keySet()) System.out.println("moved " + event.file + ": " + key);
+            for (String key : event.removed) System.out.println("removed " + event.file + ": " + key);
+            if (out != null) {
+                writeGraphs(out, event);
+            }
+            System.out.flush();
+        });
+        try {
+            watcher.watch(roots);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // <out>/<path relative to its root without .java>/<method key>.dot
+    private static void writeGraphs(Path out, ChangeEvent event) {
+        Path dir = out.resolve(event.name.substring(0, event.name.length() - ".java".length()));
+        var exporter = new DotExporter();
+        try {
+            Files.createDirectories(dir);
+            Map<String, PDG> changed = new LinkedHashMap<>(event.added);
+            changed.putAll(event.modified);
+            changed.putAll(event.moved);
+            for (var entry : changed.entrySet()) {
+                try (OutputStream fileOut = Files.newOutputStream(dir.resolve(fileNameFor(entry.getKey())))) {
+                    exporter.export(entry.getValue(), fileOut);
+                }
+            }
+            for (String key : event.removed) {
+                Files.deleteIfExists(dir.resolve(fileNameFor(key)));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing graphs: " + e.getMessage());
+        }
+    }
+
+    private static String fileNameFor(String key) {
+        return key.replaceAll("[^A-Za-z0-9._#-]", "_") + ".dot";
+    }
+
+    // Brings the state of one file up to date and reports the difference
+    public void refresh(Path file) {
+        Map<String, MethodState> previous = files.getOrDefault(file, Collections.emptyMap());
+        Map<String, MethodState> current = new LinkedHashMap<>();
+        Map<String, PDG> added = new LinkedHashMap<>();
+        Map<String, PDG> modified = new LinkedHashMap<>();
+        Map<String, PDG> moved = new LinkedHashMap<>();
+
+        if (Files.isRegularFile(file)) {
+            CompilationUnit cu;
+            try {
+                cu = parser.parse(Files.readString(file)).getResult().orElse(null);
+            } catch (IOException e) {
+                System.err.println(file + ": Error reading file: " + e.getMessage());
+                return;
+            }
+            if (cu == null) {
+                // Keep the last good graphs while the file does not parse
+                return;
+            }
+
+            for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+                String key = methodKey(method, current);
+                String fingerprint = fingerprint(method);
+                int line = method.getBegin().map(p -> p.line).orElse(0);
+                MethodState old = previous.get(key);
+                if (old != null && old.fingerprint.equals(fingerprint)) {
+                    if (old.line == line) {
+                        current.put(key, old);
+                    } else {
+                        PDG pdg = old.pdg.shiftLines(line - old.line);
+                        current.put(key, new MethodState(fingerprint, line, pdg));
+                        moved.put(key, pdg);
+                    }
+                    continue;
+                }
+                PDG pdg = new PDGBuilder(method).build().freeze();
+                current.put(key, new MethodState(fingerprint, line, pdg));
+                (old == null ? added : modified).put(key, pdg);
+            }
+        }
+
+        List<String> removed = previous.keySet().stream()
+            .filter(key -> !current.containsKey(key))
+            .collect(Collectors.toList());
+        if (current.isEmpty()) {
+            files.remove(file);
+        } else {
+            files.put(file, current);
+        }
+
+        var event = new ChangeEvent(file, sourceName(file), added, modified, moved, removed);
+        if (!event.isEmpty()) {
+            listener.onChange(event);
+        }
+    }
+
+    // Reports every method under roots as added, then blocks and reports changes
+    public void watch(List<Path> roots) throws IOException, InterruptedException {
+        this.roots = roots;
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> keys = new HashMap<>();
+            Set<Path> watchedFiles = new HashSet<>();
+            for (Path root : roots) {
+                if (Files.isDirectory(root)) {
+                    registerTree(service, root, keys);
+                } else {
+                    watchedFiles.add(root.toAbsolutePath());
+                    keys.put(root.toAbsolutePath().getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                             root.toAbsolutePath().getParent());
+                }
+            }
+            for (BatchRunner.Source source : BatchRunner.collectSources(roots)) {
+                refresh(source.path.toAbsolutePath());
+            }
+
+            while (true) {
+                // Editors often truncate and then write a file, so events that
+                // arrive within DEBOUNCE_MS of each other are handled together
+                Set<Path> dirty = new LinkedHashSet<>();
+                WatchKey key = service.take();
+                do {
+                    Path dir = keys.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW || dir == null) continue;
+                        Path path = dir.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            registerTree(service, path, keys);
+                            try (Stream<Path> walk = Files.walk(path)) {
+                                walk.filter(MethodWatcher::isJavaFile).sorted().forEach(dirty::add);
+                            }
+                        } else if (isJavaFile(path) && (watchedFiles.contains(path) || isUnderDirectoryRoot(path, roots))) {
+                            dirty.add(path);
+                        }
+                    }
+                    if (!key.reset()) {
+                        keys.remove(key);
+                    }
+                } while ((key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null);
+
+                for (Path path : dirty) {
+                    refresh(path);
+                }
+            }
+        }
+    }
+
+    private static void registerTree(WatchService service, Path root, Map<WatchKey, Path> keys) throws IOException {
+        try (Stream<Path> walk = Files.walk(root.toAbsolutePath())) {
+            for (Path dir : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+                keys.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            }
+        }
+    }
+
+    private static boolean isUnderDirectoryRoot(Path path, List<Path> roots) {
+        for (Path root : roots) {
+            if (Files.isDirectory(root) && path.startsWith(root.toAbsolutePath())) return true;
+        }
+        return false;
+    }
+
+    // The name BatchRunner.collectSources gives file under the watched roots,
+    // so that equal names in different directories or roots stay apart
+    private String sourceName(Path file) {
+        for (int i = 0; i < roots.size(); ++i) {
+            Path root = roots.get(i).toAbsolutePath();
+            String prefix = BatchRunner.inputPrefix(roots, i);
+            if (file.equals(root)) return prefix + file.getFileName();
+            if (Files.isDirectory(root) && file.startsWith(root)) return prefix + root.relativize(file);
+        }
+        return file.getFileName().toString();
+    }
+
+    private static boolean isJavaFile(Path path) {
+        return path.toString().endsWith(".java");
+    }
+
+    // <type>.<signature>, with a #n suffix if the same key occurs again in one file
+    private static String methodKey(MethodDeclaration method, Map<String, MethodState> taken) {
+        String type = "";
+        for (Node parent = method.getParentNode().orElse(null); parent != null; parent = parent.getParentNode().orElse(null)) {
+            if (parent instanceof TypeDeclaration) {
+                type = ((TypeDeclaration<?>) parent).getNameAsString() + ".";
+                break;
+            }
+        }
+        String key = type + method.getSignature().asString();
+        for (int i = 2; taken.containsKey(key); ++i) {
+            key = type + method.getSignature().asString() + "#" + i;
+        }
+        return key;
+    }
+
+    // Of the source text and start column, the start line is compared
+    // separately: source ranges of a first line's statements carry the column
+    private static String fingerprint(MethodDeclaration method) {
+        int column = method.getBegin().map(p -> p.column).orElse(0);
+        String text = method.getTokenRange().map(Object::toString).orElseGet(method::toString);
+        return Hashes.sha256(column + ":" + text);
+    }
+}
@@ -4,11 +4,60 @@ import java.util.List;
 
 public class PDG {
     final List<PDGNode> nodes;
-    final List<PDGEdge> edges;
+    final CsrGraph graph;
+    final BuildBudget.Fallback fallback; // NONE unless the build ran out of budget
+    final String exceeded;               // the limit that ran out, null if none
+    private Slicer slicer;
 
-    public PDG(List<PDGNode> nodes, List<PDGEdge> edges) {
+    public PDG(List<PDGNode> nodes, CsrGraph graph) {
+        this(nodes, graph, BuildBudget.Fallback.NONE, null);
+    }
+
+    PDG(List<PDGNode> nodes, CsrGraph graph, BuildBudget.Fallback fallback, String exceeded) {
         this.nodes = nodes;
-        this.edges = edges;
+        this.graph = graph;
+        this.fallback = fallback;
+        this.exceeded = exceeded;
+    }
+
+    // A copy without references to the AST: node kinds, source ranges and
+    // labels are kept in flat arrays, the graph is shared. A frozen PDG
+    // freezes to itself.
+    public PDG freeze() {
+        if (isFrozen()) return this;
+        return new PDG(new FrozenNodes(nodes), graph, fallback, exceeded);
+    }
+
+    // A frozen copy for the same code moved by lineShift lines; the graph is shared
+    public PDG shiftLines(int lineShift) {
+        PDG frozen = freeze();
+        if (lineShift == 0) return frozen;
+        return new PDG(((FrozenNodes) frozen.nodes).shiftLines(lineShift), graph, fallback, exceeded);
+    }
+
+    public boolean isDegraded() {
+        return fallback != BuildBudget.Fallback.NONE;
     }
-}
 
+    // "<fallback> (<limit> budget exceeded)", for the outputs that flag degraded graphs
+    String degradation() {
+        return fallback.name().toLowerCase().replace('_', '-') + " (" + exceeded + " budget exceeded)";
+    }
+
+    public boolean isFrozen() {
+        return nodes instanceof FrozenNodes;
+    }
+
+    // Slicing index, built on first use and kept for the lifetime of the graph
+    public synchronized Slicer slicer() {
+        if (slicer == null) {
+            slicer = new Slicer(this);
+        }
+        return slicer;
+    }
+
+    // Allocates a PDGEdge per edge, traversals should use graph instead
+    public List<PDGEdge> edges() {
+        return graph.edges(nodes);
+    }
+}
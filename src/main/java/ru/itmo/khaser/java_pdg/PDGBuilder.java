@@ -1,23 +1,40 @@
 package ru.itmo.khaser.java_pdg;
 
-import com.github.javaparser.Position;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.body.VariableDeclarator;
-import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.stmt.*;
-import com.github.javaparser.utils.Pair;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class PDGBuilder {
+    // Methods with at least this many nodes get their data dependences
+    // computed by variable groups in parallel
+    static final int PARALLEL_DATA_NODES = 2048;
+    // Groups per thread, so that uneven groups still keep every thread busy
+    private static final int GROUPS_PER_THREAD = 2;
+
     private final MethodDeclaration method;
     private final List<PDGNode> nodes;
-    private final List<PDGEdge> edges;
+    private final CsrGraph.EdgeBuffer cfgEdges;
+    private final CsrGraph.EdgeBuffer controlEdges;
+    private CsrGraph.EdgeBuffer dataEdges;
+    private final DefUseCollector defUse;
     private int nodeIdCounter;
-    private final Map<Pair<Statement, Position>, PDGNode> stmtToNode;
-    private final Map<PDGNode, Set<String>> nodeToVarsUsed;
-    private final Map<PDGNode, Set<String>> nodeToVarsDefined;
+    private final Map<Statement, PDGNode> stmtToNode; // by identity, Node.equals is structural
+    private int[][] varsUsed;    // node id -> variable ids
+    private int[][] varsDefined;
+    private PDGNode entryNode;
+    private PDGNode exitNode;
+    private CsrGraph.Plane cfg;
+    private CsrGraph.Plane control;
+    private final BuildMetrics metrics;
+    private int parallelDataNodes = PARALLEL_DATA_NODES;
+    private boolean ssa;
+    private BuildBudget budget = BuildBudget.unlimited();
+    private BuildBudget.Fallback fallback = BuildBudget.Fallback.NONE;
+    private String exceeded;
 
     class CFGContext {
         final PDGNode cont;
@@ -33,30 +50,149 @@ public class PDGBuilder {
     };
 
     public PDGBuilder(MethodDeclaration method) {
+        this(method, new BuildMetrics(method.getSignature().asString()));
+    }
+
+    // Phase timings and graph sizes are recorded into metrics
+    public PDGBuilder(MethodDeclaration method, BuildMetrics metrics) {
         this.method = method;
+        this.metrics = metrics;
         this.nodes = new ArrayList<>();
-        this.edges = new ArrayList<>();
+        this.cfgEdges = new CsrGraph.EdgeBuffer(false);
+        this.controlEdges = new CsrGraph.EdgeBuffer(false);
+        this.dataEdges = new CsrGraph.EdgeBuffer(true);
+        this.defUse = new DefUseCollector();
         this.nodeIdCounter = 0;
-        this.stmtToNode = new HashMap<>();
-        this.nodeToVarsUsed = new HashMap<>();
-        this.nodeToVarsDefined = new HashMap<>();
+        this.stmtToNode = new IdentityHashMap<>();
     }
 
+    // A method that runs out of budget before its control dependences are
+    // known becomes a summary node, one that runs out in the data dependences
+    // keeps only its control dependences
     public PDG build() {
-        PDGNode entryNode = createNode(null, "ENTRY: " + method.getSignature().asString());
-        PDGNode exitNode = createNode(null, "EXIT: " + method.getSignature().asString());
-        entryNode.reachable = true;
-        exitNode.reachable = true;
-
-        if (method.getBody().isPresent()) {
-            BlockStmt body = method.getBody().get();
-            addControlEdge(entryNode, createNodesRec(body));
-            processBlockStmt(body, new CFGContext(exitNode, null, null, exitNode));
+        budget.start();
+        try {
+            createNodes();
+            buildControlFlow();
+            buildControlDependences();
+        } catch (BuildBudget.Exceeded e) {
+            return summary(e.limit);
+        }
+        try {
+            buildDataDependencies();
+        } catch (BuildBudget.Exceeded e) {
+            dataEdges = new CsrGraph.EdgeBuffer(true);
+            fallback = BuildBudget.Fallback.CONTROL_ONLY;
+            exceeded = e.limit;
         }
+        return finish();
+    }
+
+    public BuildMetrics metrics() {
+        return metrics;
+    }
 
-        addDataDependencies();
+    // Integer.MAX_VALUE keeps data dependences on the calling thread
+    void setParallelDataThreshold(int nodes) {
+        this.parallelDataNodes = nodes;
+    }
 
-        return new PDG(nodes, edges);
+    // Data dependences from SSA def-use chains (see SSADefUse) instead of
+    // every control flow path: later definitions of a variable kill earlier ones
+    void setSsa(boolean ssa) {
+        this.ssa = ssa;
+    }
+
+    // Limits checked by build(), unlimited by default
+    void setBudget(BuildBudget budget) {
+        this.budget = budget;
+    }
+
+    // The phases of build(), package-private so that they can be measured separately
+
+    void createNodes() {
+        var span = metrics.start(BuildMetrics.Phase.CREATE_NODES);
+        try {
+            entryNode = createNode(null, "ENTRY: " + method.getSignature().asString());
+            exitNode = createNode(null, "EXIT: " + method.getSignature().asString());
+            entryNode.reachable = true;
+            exitNode.reachable = true;
+
+            method.getBody().ifPresent(body -> addFlowEdge(entryNode, createNodesRec(body)));
+            metrics.nodes = nodes.size();
+        } finally {
+            span.end();
+        }
+    }
+
+    void buildControlFlow() {
+        var span = metrics.start(BuildMetrics.Phase.CONTROL_FLOW);
+        try {
+            varsUsed = new int[nodes.size()][];
+            varsDefined = new int[nodes.size()][];
+            method.getBody().ifPresent(body -> processBlockStmt(body, new CFGContext(exitNode, null, null, exitNode)));
+            cfg = cfgEdges.toPlane(nodes.size());
+            budget.commitEdges(cfg.edgeCount());
+            metrics.cfgEdges = cfg.edgeCount();
+        } finally {
+            span.end();
+        }
+    }
+
+    void buildControlDependences() {
+        var span = metrics.start(BuildMetrics.Phase.CONTROL_DEPENDENCES);
+        try {
+            new ControlDependence(cfg, nodes.size(), entryNode.id, exitNode.id, budget).solve(controlEdges);
+            control = controlEdges.toPlane(nodes.size());
+            budget.commitEdges(control.edgeCount());
+            metrics.controlEdges = control.edgeCount();
+        } finally {
+            span.end();
+        }
+    }
+
+    void buildDataDependencies() {
+        var span = metrics.start(BuildMetrics.Phase.DATA_DEPENDENCIES);
+        try {
+            addDataDependencies(entryNode, cfg);
+            metrics.dataEdges = dataEdges.size();
+        } finally {
+            span.end();
+        }
+    }
+
+    PDG finish() {
+        var span = metrics.start(BuildMetrics.Phase.FINISH);
+        var graph = new CsrGraph(nodes.size(), cfg, control, dataEdges.toPlane(nodes.size()), defUse.varNames());
+        metrics.dataEdges = graph.data.edgeCount();
+        span.end();
+        return new PDG(nodes, graph, fallback, exceeded);
+    }
+
+    // ENTRY -> SUMMARY -> EXIT, where SUMMARY stands for the whole body
+    private PDG summary(String limit) {
+        var span = metrics.start(BuildMetrics.Phase.FINISH);
+        String signature = method.getSignature().asString();
+        List<PDGNode> summaryNodes = List.of(
+            new PDGNode(0, null, "ENTRY: " + signature),
+            new PDGNode(1, null, "EXIT: " + signature),
+            new PDGNode(2, method.getBody().orElse(null), "SUMMARY: body of " + signature + " not analyzed"));
+        for (PDGNode node : summaryNodes) node.reachable = true;
+        var flow = new CsrGraph.EdgeBuffer(false);
+        flow.add(0, 2, -1);
+        flow.add(2, 1, -1);
+        var controlled = new CsrGraph.EdgeBuffer(false);
+        controlled.add(0, 2, -1);
+        var graph = new CsrGraph(3, flow.toPlane(3), controlled.toPlane(3), new CsrGraph.EdgeBuffer(true).toPlane(3),
+                                 new String[0]);
+        metrics.nodes = 3;
+        metrics.cfgEdges = 2;
+        metrics.controlEdges = 1;
+        metrics.dataEdges = 0;
+        metrics.definitions = 0;
+        metrics.blocks = 0;
+        span.end();
+        return new PDG(summaryNodes, graph, BuildBudget.Fallback.SUMMARY, limit);
     }
 
     // Returns entry point to created structure
@@ -72,44 +208,49 @@ public class PDGBuilder {
             return ret;
         } else if (stmt instanceof IfStmt) {
             var if_stmt = (IfStmt) stmt;
-            String label = "if (" + if_stmt.getCondition().toString() + ")";
-            var if_node = createNode(if_stmt, label);
+            var if_node = createNode(if_stmt);
             Statement then_stmt = if_stmt.getThenStmt();
             var then_node = createNodesRec(then_stmt);
-            addControlEdge(if_node, then_node);
+            addFlowEdge(if_node, then_node);
             if (if_stmt.getElseStmt().isPresent()) {
                 var else_stmt = if_stmt.getElseStmt().get();
                 var else_node = createNodesRec(else_stmt);
-                addControlEdge(if_node, else_node);
+                addFlowEdge(if_node, else_node);
             }
             return if_node;
         } else if (stmt instanceof WhileStmt) {
             var while_stmt = (WhileStmt) stmt;
-            String label = "while (" + while_stmt.getCondition().toString() + ")";
-            var while_node = createNode(while_stmt, label);
+            var while_node = createNode(while_stmt);
             Statement body_stmt = while_stmt.getBody();
             var body_node = createNodesRec(body_stmt);
-            addControlEdge(while_node, body_node);
+            addFlowEdge(while_node, body_node);
             return while_node;
         } else if (stmt instanceof ForStmt) {
             var for_stmt = (ForStmt) stmt;
-            String label = stmt.toString().split("\n")[0];
-            var for_node = createNode(for_stmt, label);
+            var for_node = createNode(for_stmt);
             Statement body_stmt = for_stmt.getBody();
             var body_node = createNodesRec(body_stmt);
-            addControlEdge(for_node, body_node);
+            addFlowEdge(for_node, body_node);
             return for_node;
         } else {
-            return createNode(stmt, stmt.getBegin().get().line + ": " + stmt.toString().trim());
+            return createNode(stmt);
         }
     }
 
     private PDGNode createNode(Statement stmt, String label) {
+        budget.checkNodes(nodes.size() + 1);
         PDGNode node = new PDGNode(nodeIdCounter++, stmt, label);
         nodes.add(node);
-        if (stmt != null) {
-            stmtToNode.put(new Pair<Statement, Position>(stmt, stmt.getBegin().get()), node);
-        }
+        return node;
+    }
+
+    // The label is rendered from the source only when it is asked for
+    private PDGNode createNode(Statement stmt) {
+        budget.checkNodes(nodes.size() + 1);
+        budget.checkTime();
+        PDGNode node = new PDGNode(nodeIdCounter++, stmt);
+        nodes.add(node);
+        stmtToNode.put(stmt, node);
         return node;
     }
 
@@ -130,22 +271,23 @@ public class PDGBuilder {
     }
 
     private PDGNode stmtToNode(Statement stmt) {
-        return stmtToNode.get(new Pair<Statement, Position>(stmt, stmt.getBegin().get()));
+        return stmtToNode.get(stmt);
     }
 
     // Return true if exists control flow that reaches ctx.cont
     private boolean processStatement(Statement stmt, CFGContext ctx) {
+        budget.checkTime();
         var node = stmtToNode(stmt);
         if (node != null) { // we don't have nodes for BlockStmt
             node.reachable = true;
         }
         if (stmt instanceof ExpressionStmt) {
-            analyzeVariableUsage(node, stmt);
-            addControlEdge(node, ctx.cont);
+            analyzeVariableUsage(node, analyzedParts(stmt));
+            addFlowEdge(node, ctx.cont);
             return true;
         } else if (stmt instanceof IfStmt) {
             var if_stmt = (IfStmt) stmt;
-            analyzeVariableUsage(node, if_stmt.getCondition());
+            analyzeVariableUsage(node, analyzedParts(stmt));
             Statement then_stmt = if_stmt.getThenStmt();
             var new_ctx = new CFGContext(ctx.cont, ctx.curLoopNode, ctx.contForCurLoopNode, ctx.methodExit);
             boolean ret = processStatement(then_stmt, new_ctx);
@@ -154,39 +296,37 @@ public class PDGBuilder {
                 Statement else_stmt = if_stmt.getElseStmt().get();
                 ret |= processStatement(else_stmt, new_ctx);
             } else {
-                addControlEdge(node, ctx.cont);
+                addFlowEdge(node, ctx.cont);
                 ret = true;
             }
             return ret;
         } else if (stmt instanceof WhileStmt) {
             var while_stmt = (WhileStmt) stmt;
-            analyzeVariableUsage(node, while_stmt.getCondition());
+            analyzeVariableUsage(node, analyzedParts(stmt));
             Statement body = while_stmt.getBody();
             var new_ctx = new CFGContext(node, node, ctx.cont, ctx.methodExit);
-            addControlEdge(node, ctx.cont);
+            addFlowEdge(node, ctx.cont);
             processStatement(body, new_ctx);
             return true;
         } else if (stmt instanceof ForStmt) {
             var for_stmt = (ForStmt) stmt;
-            for_stmt.getCompare().ifPresent(it -> analyzeVariableUsage(node, it));
-            for_stmt.getUpdate().forEach(it -> analyzeVariableUsage(node, it));
-            for_stmt.getInitialization().forEach(it -> analyzeVariableUsage(node, it));
+            analyzeVariableUsage(node, analyzedParts(stmt));
             Statement body = for_stmt.getBody();
             var new_ctx = new CFGContext(node, node, ctx.cont, ctx.methodExit);
-            addControlEdge(node, ctx.cont);
+            addFlowEdge(node, ctx.cont);
             processStatement(body, new_ctx);
             return true;
         } else if (stmt instanceof ReturnStmt) {
-            addControlEdge(node, ctx.methodExit);
-            analyzeVariableUsage(node, stmt);
+            addFlowEdge(node, ctx.methodExit);
+            analyzeVariableUsage(node, analyzedParts(stmt));
             return false;
         } else if (stmt instanceof BlockStmt) {
             return processBlockStmt((BlockStmt) stmt, ctx);
         } else if (stmt instanceof BreakStmt) {
-            addControlEdge(node, ctx.contForCurLoopNode);
+            addFlowEdge(node, ctx.contForCurLoopNode);
             return false;
         } else if (stmt instanceof ContinueStmt) {
-            addControlEdge(node, ctx.curLoopNode);
+            addFlowEdge(node, ctx.curLoopNode);
             return false;
         } else {
             return false;
@@ -225,107 +365,87 @@ public class PDGBuilder {
     //     processStatement(body, forNode);
     // }
 
-    private void analyzeVariableUsage(PDGNode node, Node stmt) {
-        Set<String> usedVars = extractUsedVariables(stmt);
-        Set<String> definedVars = extractDefinedVariables(stmt);
-
-        nodeToVarsUsed.put(node, usedVars);
-        nodeToVarsDefined.put(node, definedVars);
+    // The parts of stmt whose variables belong to its own node: a condition
+    // or a loop header, not the nested statements, which have nodes of their own
+    static List<Node> analyzedParts(Statement stmt) {
+        if (stmt instanceof ExpressionStmt || stmt instanceof ReturnStmt) {
+            return List.of(stmt);
+        } else if (stmt instanceof IfStmt) {
+            return List.of(((IfStmt) stmt).getCondition());
+        } else if (stmt instanceof WhileStmt) {
+            return List.of(((WhileStmt) stmt).getCondition());
+        } else if (stmt instanceof ForStmt) {
+            var for_stmt = (ForStmt) stmt;
+            List<Node> header = new ArrayList<>(for_stmt.getInitialization());
+            for_stmt.getCompare().ifPresent(header::add);
+            header.addAll(for_stmt.getUpdate());
+            return header;
+        }
+        return List.of();
     }
 
-    private Set<String> extractUsedVariables(Node node) {
-        Set<String> vars = new HashSet<>();
-        node.findAll(NameExpr.class).forEach(name -> vars.add(name.getNameAsString()));
-        return vars;
+    // Variable ids used by a node after build(), null if it uses none
+    int[] varsUsed(int node) {
+        return varsUsed[node];
     }
 
-    private Set<String> extractDefinedVariables(Node node) {
-        Set<String> vars = new HashSet<>();
-
-        node.findAll(VariableDeclarator.class).forEach(decl ->
-            vars.add(decl.getNameAsString())
-        );
+    // Variable ids defined by a node after build(), null if it defines none
+    int[] varsDefined(int node) {
+        return varsDefined[node];
+    }
 
-        // Assignments
-        node.findAll(AssignExpr.class).forEach(assign -> {
-            if (assign.getTarget() instanceof NameExpr) {
-                vars.add(((NameExpr) assign.getTarget()).getNameAsString());
-            }
-        });
+    // Id of a variable in this method's symbol table, -1 if it does not occur
+    int varId(String name) {
+        return defUse.find(name);
+    }
 
-        return vars;
+    // All parts of a statement are analyzed together, in a single pass each
+    private void analyzeVariableUsage(PDGNode node, List<Node> parts) {
+        defUse.begin();
+        for (Node part : parts) {
+            defUse.collect(part);
+        }
+        varsUsed[node.id] = defUse.uses();
+        varsDefined[node.id] = defUse.defs();
     }
 
-    private void addControlEdge(PDGNode source, PDGNode target) {
+    private void addFlowEdge(PDGNode source, PDGNode target) {
         if (source == null || target == null) return;
-        edges.add(new PDGEdge(source, target, PDGEdge.EdgeType.CONTROL, ""));
+        budget.checkEdges(cfgEdges.size() + 1);
+        cfgEdges.add(source.id, target.id, -1);
     }
 
-    private void addDataEdge(PDGNode source, PDGNode target, String varName) {
+    private void addDataEdge(int source, int target, int varId) {
         if (source == target) return;
-        edges.add(new PDGEdge(source, target, PDGEdge.EdgeType.DATA, varName));
+        budget.checkEdges(dataEdges.size() + 1);
+        dataEdges.add(source, target, varId);
     }
 
-    private void addDataDependencies() {
-        Map<PDGNode, List<PDGNode>> adjacencyList = new HashMap<>();
-        for (PDGNode node : nodes) {
-            adjacencyList.put(node, new ArrayList<>());
+    private void addDataDependencies(PDGNode entryNode, CsrGraph.Plane cfg) {
+        if (ssa) {
+            var defUseChains = new SSADefUse(nodes.size(), cfg, varsDefined, varsUsed, defUse.varCount(), entryNode.id,
+                                             budget);
+            metrics.definitions = defUseChains.definitionCount();
+            defUseChains.solve();
+            defUseChains.forEachDependence(this::addDataEdge);
+            return;
         }
-        for (PDGEdge edge : edges) {
-            if (edge.type == PDGEdge.EdgeType.CONTROL) {
-                adjacencyList.get(edge.source).add(edge.target);
-            }
-        }
-
-        // For each variable, find all definitions and uses
-        Map<String, List<PDGNode>> varToDefNodes = new HashMap<>();
-        Map<String, List<PDGNode>> varToUseNodes = new HashMap<>();
-        for (Map.Entry<PDGNode, Set<String>> entry : nodeToVarsDefined.entrySet()) {
-            PDGNode node = entry.getKey();
-            for (String var : entry.getValue()) {
-                varToDefNodes.computeIfAbsent(var, k -> new ArrayList<>()).add(node);
-            }
-        }
-        for (Map.Entry<PDGNode, Set<String>> entry : nodeToVarsUsed.entrySet()) {
-            PDGNode node = entry.getKey();
-            for (String var : entry.getValue()) {
-                varToUseNodes.computeIfAbsent(var, k -> new ArrayList<>()).add(node);
-            }
-        }
-
-        // For each definition, find all reachable uses of the same variable
-        for (String var : varToDefNodes.keySet()) {
-            List<PDGNode> defNodes = varToDefNodes.get(var);
-            List<PDGNode> useNodes = varToUseNodes.getOrDefault(var, new ArrayList<>());
-
-            for (PDGNode defNode : defNodes) {
-                Set<PDGNode> reachable = findReachableNodes(defNode, adjacencyList);
-                for (PDGNode useNode : useNodes) {
-                    if (reachable.contains(useNode)) {
-                        addDataEdge(defNode, useNode, var);
-                    }
-                }
-            }
+        // Solved over basic blocks, expanded to nodes for the edges
+        var blocks = BasicBlocks.of(cfg, nodes.size(), budget);
+        metrics.blocks = blocks.blockCount;
+        // Inside a batch the groups are forked into its pool, where idle
+        // workers steal them, otherwise into the common pool
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        int groups = Math.min(pool.getParallelism() * GROUPS_PER_THREAD, defUse.varCount());
+        if (nodes.size() >= parallelDataNodes && pool.getParallelism() > 1 && groups > 1) {
+            metrics.definitions = ReachingDefinitions.solveByVariableGroups(
+                blocks, varsDefined, varsUsed, defUse.varCount(), entryNode.id, groups, budget, this::addDataEdge);
+            return;
         }
-    }
-
-    private Set<PDGNode> findReachableNodes(PDGNode start, Map<PDGNode, List<PDGNode>> adjacencyList) {
-        Set<PDGNode> reachable = new HashSet<>();
-        Queue<PDGNode> queue = new LinkedList<>();
-        queue.add(start);
-        reachable.add(start);
-
-        while (!queue.isEmpty()) {
-            PDGNode current = queue.poll();
-            for (PDGNode neighbor : adjacencyList.get(current)) {
-                if (!reachable.contains(neighbor)) {
-                    reachable.add(neighbor);
-                    queue.add(neighbor);
-                }
-            }
-        }
-
-        return reachable;
+        var reaching = new ReachingDefinitions(blocks, varsDefined, defUse.varCount(), budget);
+        metrics.definitions = reaching.definitionCount();
+        reaching.solve(entryNode.id);
+        reaching.forEachDependence(varsUsed, this::addDataEdge);
     }
 }
 
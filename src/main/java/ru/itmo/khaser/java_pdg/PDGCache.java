@@ -0,0 +1,180 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed cache of built graphs in a directory that several runs
+// may share at once. An entry is a file named by the SHA-256 of everything it
+// was computed from, FORMAT included, so it never changes once written: it is
+// written to a temporary file and moved into place atomically, and a reader
+// sees either the whole entry or none.
+//
+// Reads touch the modification time of the entry; close() deletes the least
+// recently used entries until the directory fits in maxBytes. An entry that
+// another run deletes in the meantime is simply a miss.
+public class PDGCache implements Closeable {
+    // Part of every key; bump whenever graphs or exports of the same source change
+    static final String FORMAT = "pdg-cache-2/store-" + PDGStore.VERSION;
+    public static final long DEFAULT_MAX_BYTES = 512L << 20;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private static class Entry {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.size = attributes.size();
+            this.lastUsed = attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public PDGCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+    }
+
+    // Hash of the parts, separated so that ("ab", "c") and ("a", "bc") differ
+    static String key(String... parts) {
+        var text = new StringBuilder(FORMAT);
+        for (String part : parts) text.append('\0').append(part);
+        return Hashes.sha256(text.toString());
+    }
+
+    // Returns null on a miss
+    byte[] get(String key) {
+        Path file = path(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // a read-only cache, or evicted since the read: the entry is only
+            // evicted earlier, the bytes read are still good
+        }
+        return bytes;
+    }
+
+    // A failed write leaves the entry missing, which only costs a rebuild later
+    void put(String key, byte[] bytes) {
+        Path file = path(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), key, TEMP_SUFFIX);
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            bytesWritten.addAndGet(bytes.length);
+        } catch (IOException e) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // left for eviction to clean up
+            }
+        }
+    }
+
+    // Graph entry: int begin line of the method, then a PDGStore record
+    static byte[] encode(PDG pdg, int line) throws IOException {
+        ByteBuffer record = PDGStore.record("", pdg);
+        ByteBuffer entry = ByteBuffer.allocate(4 + record.remaining());
+        entry.putInt(line).put(record);
+        return entry.array();
+    }
+
+    // The graph of an entry, moved to a method that begins on line
+    static PDG decode(byte[] entry, int line) {
+        ByteBuffer buf = ByteBuffer.wrap(entry);
+        int storedLine = buf.getInt();
+        return new PDGStore.StoredGraph(buf.slice()).toPDG(line - storedLine);
+    }
+
+    public String stats() {
+        return "hits=" + hits.get() + " misses=" + misses.get() + " written=" + bytesWritten.get();
+    }
+
+    // Evicts, if anything was written by this run
+    @Override
+    public void close() throws IOException {
+        if (bytesWritten.get() > 0) evict();
+    }
+
+    // Deletes entries in order of last use until the rest fits in maxBytes.
+    // Temporary files are left to the runs writing them unless they are stale
+    void evict() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        List<Path> paths = new ArrayList<>();
+        for (Path child : children(dir)) {
+            paths.add(child);
+            paths.addAll(children(child));
+        }
+        for (Path path : paths) {
+            Entry entry;
+            try {
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) continue;
+                entry = new Entry(path, attributes);
+            } catch (IOException e) {
+                continue; // evicted by another run
+            }
+            if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                if (now - entry.lastUsed > STALE_TEMP_MILLIS) Files.deleteIfExists(path);
+                continue;
+            }
+            entries.add(entry);
+            total += entry.size;
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+        for (Entry entry : entries) {
+            if (total <= maxBytes) break;
+            Files.deleteIfExists(entry.path);
+            total -= entry.size;
+        }
+    }
+
+    // Entries of a directory, none if it is not one. Another run may delete
+    // the directory or entries of it while they are listed, those are evicted
+    private static List<Path> children(Path directory) throws IOException {
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) children.add(child);
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            // evicted by another run, or an entry
+        } catch (DirectoryIteratorException e) {
+            if (!(e.getCause() instanceof NoSuchFileException)) throw e.getCause();
+        }
+        return children;
+    }
+
+    // <dir>/<first two hex digits>/<key>, so that no directory gets too large
+    private Path path(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+}
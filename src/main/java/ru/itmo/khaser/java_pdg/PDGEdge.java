@@ -23,24 +23,24 @@ public class PDGEdge {
         return source + " -> " + target + " [" + type + ": " + label + "]";
     }
 
-    // @Override
-    // public boolean equals(Object o) {
-    //     if (this == o) return true;
-    //     if (o == null || getClass() != o.getClass()) return false;
-    //     PDGEdge pdgEdge = (PDGEdge) o;
-    //     return source.equals(pdgEdge.source) &&
-    //            target.equals(pdgEdge.target) &&
-    //            type == pdgEdge.type &&
-    //            label.equals(pdgEdge.label);
-    // }
-    //
-    // @Override
-    // public int hashCode() {
-    //     int result = source.hashCode();
-    //     result = 31 * result + target.hashCode();
-    //     result = 31 * result + type.hashCode();
-    //     result = 31 * result + label.hashCode();
-    //     return result;
-    // }
+    // A plane has at most one edge per source and target, so the label,
+    // which names the edge's variables, is not part of its identity
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PDGEdge pdgEdge = (PDGEdge) o;
+        return source.equals(pdgEdge.source) &&
+               target.equals(pdgEdge.target) &&
+               type == pdgEdge.type;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = source.hashCode();
+        result = 31 * result + target.hashCode();
+        result = 31 * result + type.hashCode();
+        return result;
+    }
 }
 
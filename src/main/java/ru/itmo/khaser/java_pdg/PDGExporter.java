@@ -0,0 +1,28 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Writes a PDG to a stream as it walks the graph, without rendering it
+// into memory first. Implementations flush but never close the stream, so
+// several graphs can be written one after another.
+public interface PDGExporter {
+    // title names the graph in multi-graph output, e.g. "<file>: <signature>"; may be null
+    void export(PDG pdg, String title, OutputStream out) throws IOException;
+
+    default void export(PDG pdg, OutputStream out) throws IOException {
+        export(pdg, null, out);
+    }
+
+    String fileExtension();
+
+    static PDGExporter forFormat(String format) {
+        switch (format) {
+            case "dot": return new DotExporter();
+            case "dot-clustered": return new ClusteredDotExporter();
+            case "jsonl": return new JsonLinesExporter();
+            case "bin": return new BinaryExporter();
+            default: throw new IllegalArgumentException("Unknown format: " + format + " (expected dot, dot-clustered, jsonl or bin)");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Arrays;
+
+// Weisfeiler-Lehman fingerprint of a PDG. Every node starts from its
+// statement kind; each round rehashes a node together with the sorted hashes
+// of its CONTROL and DATA neighbours, with in- and out-edges kept apart.
+// Labels, variable names and node ids never enter a hash, so methods that
+// differ only in naming or in the order of independent statements hash alike.
+//
+// After round r a node's hash stands for the shape of its r-hop
+// neighbourhood. The hashes of rounds 1..rounds are the method's subgraph
+// features, the graph hash is the hash of the sorted final node hashes.
+public class PDGFingerprint {
+    public static final int DEFAULT_ROUNDS = 3;
+
+    final int nodeCount;
+    final long graphHash;
+    final long[] features; // distinct subgraph hashes, sorted
+
+    private PDGFingerprint(int nodeCount, long graphHash, long[] features) {
+        this.nodeCount = nodeCount;
+        this.graphHash = graphHash;
+        this.features = features;
+    }
+
+    public static PDGFingerprint of(PDG pdg) {
+        return of(pdg, DEFAULT_ROUNDS);
+    }
+
+    public static PDGFingerprint of(PDG pdg, int rounds) {
+        CsrGraph graph = pdg.graph;
+        int n = graph.nodeCount;
+        CsrGraph.Plane[] planes = { graph.control, graph.data };
+
+        long[] hash = new long[n];
+        for (int v = 0; v < n; ++v) {
+            hash[v] = mix(pdg.nodes.get(v).kind().ordinal() + 1);
+        }
+        long[] features = new long[n * rounds];
+        long[] next = new long[n];
+        long[] neighbours = new long[16];
+        for (int round = 0; round < rounds; ++round) {
+            for (int v = 0; v < n; ++v) {
+                long h = hash[v];
+                for (int p = 0; p < planes.length; ++p) {
+                    CsrGraph.Plane plane = planes[p];
+                    int size = 0;
+                    int degree = Math.max(plane.outEnd(v) - plane.outBegin(v), plane.inEnd(v) - plane.inBegin(v));
+                    if (neighbours.length < degree) neighbours = new long[Math.max(degree, neighbours.length * 2)];
+
+                    for (int e = plane.outBegin(v); e < plane.outEnd(v); ++e) neighbours[size++] = hash[plane.target(e)];
+                    h = combine(combine(h, 2 * p), fold(neighbours, size));
+                    size = 0;
+                    for (int e = plane.inBegin(v); e < plane.inEnd(v); ++e) neighbours[size++] = hash[plane.source(e)];
+                    h = combine(combine(h, 2 * p + 1), fold(neighbours, size));
+                }
+                next[v] = h;
+                features[round * n + v] = h;
+            }
+            long[] swap = hash;
+            hash = next;
+            next = swap;
+        }
+
+        Arrays.sort(hash);
+        long graphHash = fold(hash, n);
+        Arrays.sort(features);
+        int distinct = 0;
+        for (int i = 0; i < features.length; ++i) {
+            if (i == 0 || features[i] != features[i - 1]) features[distinct++] = features[i];
+        }
+        return new PDGFingerprint(n, graphHash, Arrays.copyOf(features, distinct));
+    }
+
+    public long graphHash() {
+        return graphHash;
+    }
+
+    // Hash of a multiset: sorts the first size values, so order does not matter
+    private static long fold(long[] values, int size) {
+        Arrays.sort(values, 0, size);
+        long h = mix(size);
+        for (int i = 0; i < size; ++i) h = combine(h, values[i]);
+        return h;
+    }
+
+    private static long combine(long h, long value) {
+        return mix(h ^ (value + 0x9e3779b97f4a7c15L + (h << 6) + (h >>> 2)));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,23 +1,74 @@
 package ru.itmo.khaser.java_pdg;
 
-import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.stmt.*;
 
 public class PDGNode {
+    // What a node stands for, kept when the statement itself is dropped
+    public enum Kind { SYNTHETIC, EXPRESSION, IF, WHILE, FOR, RETURN, BREAK, CONTINUE, OTHER }
+
     final int id;
-    final Statement statement;
-    final String label;
+    final Statement statement; // null for ENTRY and EXIT, and in frozen graphs
+    private String label; // rendered from the statement's source range on first use
     boolean reachable;
+    private final Kind kind;
+    private final int beginLine; // source range of the statement, 0 if it has none
+    private final int beginColumn;
+    private final int endLine;
+    private final int endColumn;
 
     public PDGNode(int id, Statement statement, String label) {
         this.id = id;
         this.statement = statement;
         this.label = label;
         this.reachable = false;
+        this.kind = kindOf(statement);
+        Range range = statement != null ? statement.getRange().orElse(null) : null;
+        this.beginLine = range != null ? range.begin.line : 0;
+        this.beginColumn = range != null ? range.begin.column : 0;
+        this.endLine = range != null ? range.end.line : 0;
+        this.endColumn = range != null ? range.end.column : 0;
+    }
+
+    // Node with a label rendered lazily from statement
+    public PDGNode(int id, Statement statement) {
+        this(id, statement, null);
+    }
+
+    // Node of a frozen graph, with no statement behind it
+    PDGNode(int id, Kind kind, int beginLine, int beginColumn, int endLine, int endColumn,
+            String label, boolean reachable) {
+        this.id = id;
+        this.statement = null;
+        this.label = label;
+        this.reachable = reachable;
+        this.kind = kind;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+    }
+
+    public Kind kind() { return kind; }
+    public int beginLine() { return beginLine; }
+    public int beginColumn() { return beginColumn; }
+    public int endLine() { return endLine; }
+    public int endColumn() { return endColumn; }
+
+    public String label() {
+        String rendered = label;
+        if (rendered == null) {
+            rendered = render(statement);
+            label = rendered;
+        }
+        return rendered;
     }
 
     @Override
     public String toString() {
-        return "Node" + id + ": " + label;
+        return "Node" + id + ": " + label();
     }
 
     @Override
@@ -32,5 +83,44 @@ public class PDGNode {
     public int hashCode() {
         return Integer.hashCode(id);
     }
-}
 
+    private static Kind kindOf(Statement stmt) {
+        if (stmt == null) return Kind.SYNTHETIC;
+        if (stmt instanceof ExpressionStmt) return Kind.EXPRESSION;
+        if (stmt instanceof IfStmt) return Kind.IF;
+        if (stmt instanceof WhileStmt) return Kind.WHILE;
+        if (stmt instanceof ForStmt) return Kind.FOR;
+        if (stmt instanceof ReturnStmt) return Kind.RETURN;
+        if (stmt instanceof BreakStmt) return Kind.BREAK;
+        if (stmt instanceof ContinueStmt) return Kind.CONTINUE;
+        return Kind.OTHER;
+    }
+
+    // Conditions and statements are cut out of the original source text by
+    // their token ranges; a for loop is shown by its first source line only
+    private static String render(Statement stmt) {
+        if (stmt instanceof IfStmt) {
+            return "if (" + sourceText(((IfStmt) stmt).getCondition()) + ")";
+        } else if (stmt instanceof WhileStmt) {
+            return "while (" + sourceText(((WhileStmt) stmt).getCondition()) + ")";
+        } else if (stmt instanceof ForStmt) {
+            return firstLine(stmt);
+        } else {
+            return stmt.getBegin().get().line + ": " + sourceText(stmt).trim();
+        }
+    }
+
+    private static String sourceText(Node node) {
+        return node.getTokenRange().map(Object::toString).orElseGet(node::toString);
+    }
+
+    private static String firstLine(Node node) {
+        if (node.getTokenRange().isEmpty()) return node.toString().split("\n")[0];
+        var text = new StringBuilder();
+        for (JavaToken token : node.getTokenRange().get()) {
+            if (token.getCategory().isEndOfLine()) break;
+            text.append(token.getText());
+        }
+        return text.toString().trim();
+    }
+}
@@ -0,0 +1,199 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Resident PDG server on a loopback HTTP port.
+//
+//   GET /pdg?file=<path>[&method=<name>][&format=dot|jsonl|bin]
+//   GET /stats                             cache statistics
+//
+// Parsed CompilationUnits are cached by path and content hash, built PDGs by
+// path, content hash and method name. Requests are served by a fixed pool
+// with a bounded queue; when the queue is full the accepting thread runs the
+// request itself, which stops it from accepting more connections. Parsing is
+// admitted only while the estimated AST size fits into a heap budget,
+// otherwise the request is answered with 503; a file that would not fit even
+// into the whole budget is answered with 413, waiting would not help it.
+public class PDGServer {
+    // Rough heap footprint of a parsed AST per byte of source
+    private static final int AST_BYTES_PER_SOURCE_BYTE = 40;
+    private static final long ADMISSION_TIMEOUT_MS = 1000;
+
+    private final LruCache<String, CompilationUnit> units;
+    private final LruCache<String, PDG> graphs;
+    private final Semaphore parseBudget; // KiB of source allowed to be parsing at once
+    private final int parseCapacity;     // permits of parseBudget
+    private final ThreadPoolExecutor executor;
+    private HttpServer server;
+
+    public PDGServer(int threads, int queueSize, long heapBytes) {
+        long sourceBytes = heapBytes / AST_BYTES_PER_SOURCE_BYTE;
+        this.units = new LruCache<>(sourceBytes / 2);      // weighed in source bytes
+        this.graphs = new LruCache<>(sourceBytes / 16);    // weighed in nodes + edges
+        this.parseCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, sourceBytes / 4 / 1024));
+        this.parseBudget = new Semaphore(parseCapacity);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) {
+        int port = 8470;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; ++i) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        try {
+            var pdgServer = new PDGServer(threads, threads * 4, Runtime.getRuntime().maxMemory());
+            pdgServer.start(port);
+            System.err.println("Listening on " + pdgServer.server.getAddress());
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/pdg", this::handlePdg);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "units: " + units.stats() + "\ngraphs: " + graphs.stats() + "\n");
+    }
+
+    private void handlePdg(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String filePath = query.get("file");
+            String methodName = query.get("method");
+            PDGExporter exporter;
+            try {
+                exporter = PDGExporter.forFormat(query.getOrDefault("format", "dot"));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+            if (filePath == null) {
+                respond(exchange, 400, "Missing 'file' parameter\n");
+                return;
+            }
+
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(Paths.get(filePath));
+            } catch (IOException e) {
+                respond(exchange, 404, "Error reading file: " + e.getMessage() + "\n");
+                return;
+            }
+            String unitKey = filePath + "@" + Hashes.sha256(bytes);
+            String graphKey = unitKey + "#" + (methodName != null ? methodName : "");
+
+            PDG pdg = graphs.get(graphKey);
+            if (pdg == null) {
+                CompilationUnit cu = units.get(unitKey);
+                if (cu == null) {
+                    int permits = bytes.length / 1024 + 1;
+                    if (permits > parseCapacity) {
+                        respond(exchange, 413, "File too large to parse within the heap budget\n");
+                        return;
+                    }
+                    if (!parseBudget.tryAcquire(permits, ADMISSION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        exchange.getResponseHeaders().set("Retry-After", "1");
+                        respond(exchange, 503, "Server is busy\n");
+                        return;
+                    }
+                    try {
+                        cu = new JavaParser().parse(new String(bytes, StandardCharsets.UTF_8)).getResult().orElse(null);
+                    } finally {
+                        parseBudget.release(permits);
+                    }
+                    if (cu == null) {
+                        respond(exchange, 422, "Failed to parse the file\n");
+                        return;
+                    }
+                    units.put(unitKey, cu, bytes.length);
+                }
+
+                Optional<MethodDeclaration> methodOpt = Main.findMethod(cu, methodName);
+                if (!methodOpt.isPresent()) {
+                    respond(exchange, 404, "Method not found: " + (methodName != null ? methodName : "(any)") + "\n");
+                    return;
+                }
+                // Frozen, cached graphs must not pin units evicted from their own cache
+                pdg = new PDGBuilder(methodOpt.get()).build().freeze();
+                graphs.put(graphKey, pdg, pdg.nodes.size() + pdg.graph.edgeCount());
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", exporter instanceof BinaryExporter
+                ? "application/octet-stream" : "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0); // chunked, the graph is streamed
+            try (OutputStream os = exchange.getResponseBody()) {
+                exporter.export(pdg, os);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Interrupted\n");
+        } catch (RuntimeException e) {
+            if (exchange.getResponseCode() != -1) {
+                // Failed while streaming, the status has been sent; the client sees a truncated body
+                exchange.close();
+            } else {
+                respond(exchange, 500, "Error: " + e.getMessage() + "\n");
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                       URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package ru.itmo.khaser.java_pdg;
+
+import ru.itmo.khaser.java_pdg.PDGEdge.EdgeType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+
+// On-disk store of many PDGs, appended by a Writer and read through a memory
+// map, so a Reader touches only the pages of the graphs it is asked for.
+//
+//   int MAGIC, int VERSION
+//   record*                     one per graph, see Writer.add
+//   index entry* (sorted)       long key hash, long record offset, int record length
+//   long index offset, int entry count, int MAGIC
+//
+// Lookups binary-search the index by FNV-1a hash of the key and compare the
+// key stored in the record; for repeated keys the latest record wins.
+public class PDGStore {
+    static final int MAGIC = 0x50444753; // "PDGS"
+    static final int VERSION = 4;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 16;
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int NODE_BYTES = 28;
+    private static final PDGNode.Kind[] KINDS = PDGNode.Kind.values();
+    private static final BuildBudget.Fallback[] FALLBACKS = BuildBudget.Fallback.values();
+
+    private static class IndexEntry {
+        final long hash;
+        final long offset;
+        final int length;
+
+        IndexEntry(long hash, long offset, int length) {
+            this.hash = hash;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final List<IndexEntry> index = new ArrayList<>();
+        private long position;
+
+        // Creates the store, or reopens an existing one to append to it
+        public Writer(Path path) throws IOException {
+            boolean exists = Files.exists(path) && Files.size(path) > 0;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (exists) {
+                try (Reader reader = new Reader(channel, false)) {
+                    for (int i = 0; i < reader.entryCount; ++i) {
+                        index.add(new IndexEntry(reader.entryHash(i), reader.entryOffset(i), reader.entryLength(i)));
+                    }
+                    position = reader.indexOffset;
+                }
+                channel.truncate(position);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(header);
+            }
+        }
+
+        public void add(String key, PDG pdg) throws IOException {
+            ByteBuffer buf = record(key, pdg);
+            index.add(new IndexEntry(hash(key.getBytes(StandardCharsets.UTF_8)), position, buf.remaining()));
+            writeFully(buf);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.sort(Comparator.<IndexEntry>comparingLong(e -> e.hash).thenComparingLong(e -> e.offset));
+                long indexOffset = position;
+                ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+                for (IndexEntry entry : index) {
+                    if (buf.remaining() < INDEX_ENTRY_BYTES) {
+                        buf.flip();
+                        writeFully(buf);
+                        buf.clear();
+                    }
+                    buf.putLong(entry.hash).putLong(entry.offset).putInt(entry.length);
+                }
+                if (buf.remaining() < TRAILER_BYTES) {
+                    buf.flip();
+                    writeFully(buf);
+                    buf.clear();
+                }
+                buf.putLong(indexOffset).putInt(index.size()).putInt(MAGIC);
+                buf.flip();
+                writeFully(buf);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        }
+    }
+
+    // Record layout:
+    //   int key length, key bytes
+    //   int node count, var count, string pool length
+    //   int fallback (BuildBudget.Fallback ordinal), exceeded budget offset, length (0 if none)
+    //   node*: int label offset, label length, flags, begin line, begin column, end line, end column
+    //          (flags: bit 0 reachable, bits 1.. PDGNode.Kind ordinal)
+    //   var*:  int name offset, name length
+    //   per EdgeType: int edge count, out offsets[n + 1], targets[m], in offsets[n + 1], sources[m]
+    //                 and for DATA in edges[m], var offsets[m + 1], var ids[var offsets[m]]
+    //                 (see CsrGraph.Plane)
+    //   string pool (UTF-8): labels, vars, exceeded budget
+    static ByteBuffer record(String key, PDG pdg) throws IOException {
+        CsrGraph graph = pdg.graph;
+        int n = pdg.nodes.size();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        byte[][] labels = new byte[n][];
+        int poolLength = 0;
+        for (int v = 0; v < n; ++v) {
+            labels[v] = pdg.nodes.get(v).label().getBytes(StandardCharsets.UTF_8);
+            poolLength += labels[v].length;
+        }
+        byte[][] vars = new byte[graph.vars.length][];
+        for (int i = 0; i < vars.length; ++i) {
+            vars[i] = graph.vars[i].getBytes(StandardCharsets.UTF_8);
+            poolLength += vars[i].length;
+        }
+        byte[] exceeded = pdg.exceeded != null ? pdg.exceeded.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        poolLength += exceeded.length;
+
+        long size = 4L + keyBytes.length + 24L + (long) n * NODE_BYTES + 8L * vars.length + poolLength;
+        for (EdgeType type : EdgeType.values()) {
+            int m = graph.plane(type).edgeCount();
+            size += 4L + 8L * (n + 1) + 8L * m;
+            if (type == EdgeType.DATA) size += 8L * m + 4 + 4L * graph.data.varIds.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph is too large for the store: " + key);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(keyBytes.length).put(keyBytes);
+        buf.putInt(n).putInt(vars.length).putInt(poolLength);
+        int exceededOffset = poolLength - exceeded.length;
+        buf.putInt(pdg.fallback.ordinal()).putInt(exceededOffset).putInt(exceeded.length);
+        int poolOffset = 0;
+        for (int v = 0; v < n; ++v) {
+            PDGNode node = pdg.nodes.get(v);
+            buf.putInt(poolOffset).putInt(labels[v].length).putInt(node.kind().ordinal() << 1 | (node.reachable ? 1 : 0));
+            buf.putInt(node.beginLine()).putInt(node.beginColumn());
+            buf.putInt(node.endLine()).putInt(node.endColumn());
+            poolOffset += labels[v].length;
+        }
+        for (byte[] var : vars) {
+            buf.putInt(poolOffset).putInt(var.length);
+            poolOffset += var.length;
+        }
+        for (EdgeType type : EdgeType.values()) {
+            CsrGraph.Plane plane = graph.plane(type);
+            buf.putInt(plane.edgeCount());
+            for (int x : plane.outOffsets) buf.putInt(x);
+            for (int x : plane.targets) buf.putInt(x);
+            for (int x : plane.inOffsets) buf.putInt(x);
+            for (int x : plane.sources) buf.putInt(x);
+            if (type == EdgeType.DATA) {
+                for (int x : plane.inEdges) buf.putInt(x);
+                for (int x : plane.varOffsets) buf.putInt(x);
+                for (int x : plane.varIds) buf.putInt(x);
+            }
+        }
+        for (byte[] label : labels) buf.put(label);
+        for (byte[] var : vars) buf.put(var);
+        buf.put(exceeded);
+
+        buf.flip();
+        return buf;
+    }
+
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final boolean ownsChannel;
+        private final MappedByteBuffer indexBuffer;
+        final long indexOffset;
+        final int entryCount;
+
+        public Reader(Path path) throws IOException {
+            this(FileChannel.open(path, StandardOpenOption.READ), true);
+        }
+
+        private Reader(FileChannel channel, boolean ownsChannel) throws IOException {
+            this.channel = channel;
+            this.ownsChannel = ownsChannel;
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Not a PDG store: file is too short");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a PDG store or unsupported version");
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            channel.read(trailer, size - TRAILER_BYTES);
+            trailer.flip();
+            this.indexOffset = trailer.getLong();
+            this.entryCount = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("PDG store was not closed properly");
+            }
+            this.indexBuffer = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) entryCount * INDEX_ENTRY_BYTES);
+        }
+
+        public int size() {
+            return entryCount;
+        }
+
+        // Returns null if the key is not in the store
+        public StoredGraph get(String key) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            long hash = hash(keyBytes);
+            int lo = 0;
+            int hi = entryCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entryHash(mid) < hash) lo = mid + 1; else hi = mid;
+            }
+            StoredGraph found = null;
+            for (int i = lo; i < entryCount && entryHash(i) == hash; ++i) {
+                var graph = new StoredGraph(channel.map(FileChannel.MapMode.READ_ONLY, entryOffset(i), entryLength(i)));
+                if (graph.key().equals(key)) found = graph;
+            }
+            return found;
+        }
+
+        long entryHash(int i) { return indexBuffer.getLong(i * INDEX_ENTRY_BYTES); }
+        long entryOffset(int i) { return indexBuffer.getLong(i * INDEX_ENTRY_BYTES + 8); }
+        int entryLength(int i) { return indexBuffer.getInt(i * INDEX_ENTRY_BYTES + 16); }
+
+        @Override
+        public void close() throws IOException {
+            if (ownsChannel) channel.close();
+        }
+    }
+
+    // Read-only view of one record; nothing is copied until asked for
+    public static class StoredGraph {
+        private final ByteBuffer buf;
+        private final int nodeCount;
+        private final int varCount;
+        private final int graphAt;
+        private final int nodesAt;
+        private final int varsAt;
+        private final int[] planeAt = new int[EdgeType.values().length];
+        private final int[] planeEdges = new int[EdgeType.values().length];
+        private final int poolAt;
+
+        StoredGraph(ByteBuffer buf) {
+            this.buf = buf;
+            int keyLength = buf.getInt(0);
+            int at = 4 + keyLength;
+            this.nodeCount = buf.getInt(at);
+            this.varCount = buf.getInt(at + 4);
+            this.graphAt = at + 12;
+            this.nodesAt = at + 24;
+            this.varsAt = nodesAt + nodeCount * NODE_BYTES;
+            at = varsAt + varCount * 8;
+            for (EdgeType type : EdgeType.values()) {
+                int m = buf.getInt(at);
+                planeAt[type.ordinal()] = at + 4;
+                planeEdges[type.ordinal()] = m;
+                at += 4 + 8 * (nodeCount + 1) + 8 * m;
+                if (type == EdgeType.DATA) at += 8 * m + 4 + 4 * buf.getInt(at + 8 * m);
+            }
+            this.poolAt = at;
+        }
+
+        public String key() {
+            return string(4, buf.getInt(0));
+        }
+
+        public int nodeCount() { return nodeCount; }
+
+        public BuildBudget.Fallback fallback() { return FALLBACKS[buf.getInt(graphAt)]; }
+
+        // The budget that ran out, null for a complete graph
+        public String exceeded() {
+            int length = buf.getInt(graphAt + 8);
+            return length > 0 ? string(poolAt + buf.getInt(graphAt + 4), length) : null;
+        }
+
+        public String label(int v) { return string(poolAt + nodeInt(v, 0), nodeInt(v, 1)); }
+        public boolean reachable(int v) { return (nodeInt(v, 2) & 1) != 0; }
+        public PDGNode.Kind kind(int v) { return KINDS[nodeInt(v, 2) >>> 1]; }
+        public int beginLine(int v) { return nodeInt(v, 3); }
+        public int beginColumn(int v) { return nodeInt(v, 4); }
+        public int endLine(int v) { return nodeInt(v, 5); }
+        public int endColumn(int v) { return nodeInt(v, 6); }
+
+        public String varName(int varId) {
+            if (varId < 0) return "";
+            return string(poolAt + buf.getInt(varsAt + varId * 8), buf.getInt(varsAt + varId * 8 + 4));
+        }
+
+        public int edgeCount(EdgeType type) { return planeEdges[type.ordinal()]; }
+
+        public int outBegin(EdgeType type, int v) { return buf.getInt(outOffsetsAt(type) + 4 * v); }
+        public int outEnd(EdgeType type, int v) { return buf.getInt(outOffsetsAt(type) + 4 * (v + 1)); }
+        public int target(EdgeType type, int e) { return buf.getInt(targetsAt(type) + 4 * e); }
+        public int inBegin(EdgeType type, int v) { return buf.getInt(inOffsetsAt(type) + 4 * v); }
+        public int inEnd(EdgeType type, int v) { return buf.getInt(inOffsetsAt(type) + 4 * (v + 1)); }
+        public int source(EdgeType type, int e) { return buf.getInt(sourcesAt(type) + 4 * e); }
+
+        // Variables as in CsrGraph.Plane, none for CONTROL
+        public int outVarBegin(EdgeType type, int e) {
+            return type == EdgeType.DATA ? buf.getInt(varOffsetsAt(type) + 4 * e) : 0;
+        }
+
+        public int outVarEnd(EdgeType type, int e) {
+            return type == EdgeType.DATA ? buf.getInt(varOffsetsAt(type) + 4 * (e + 1)) : 0;
+        }
+
+        public int inVarBegin(EdgeType type, int e) {
+            return type == EdgeType.DATA ? outVarBegin(type, buf.getInt(inEdgesAt(type) + 4 * e)) : 0;
+        }
+
+        public int inVarEnd(EdgeType type, int e) {
+            return type == EdgeType.DATA ? outVarEnd(type, buf.getInt(inEdgesAt(type) + 4 * e)) : 0;
+        }
+
+        public int var(EdgeType type, int i) {
+            return buf.getInt(varIdsAt(type) + 4 * i);
+        }
+
+        // Copies the record into a frozen PDG, moving known line numbers by
+        // lineShift, also where labels start with them (see PDGNode.render).
+        // The control flow graph is not stored, so its plane is empty
+        public PDG toPDG(int lineShift) {
+            byte[] kinds = new byte[nodeCount];
+            int[] ranges = new int[4 * nodeCount];
+            int[] labelOffsets = new int[nodeCount + 1];
+            var reachable = new BitSet(nodeCount);
+            var labels = new StringBuilder();
+            for (int v = 0; v < nodeCount; ++v) {
+                kinds[v] = (byte) kind(v).ordinal();
+                ranges[4 * v] = beginLine(v) != 0 ? beginLine(v) + lineShift : 0;
+                ranges[4 * v + 1] = beginColumn(v);
+                ranges[4 * v + 2] = endLine(v) != 0 ? endLine(v) + lineShift : 0;
+                ranges[4 * v + 3] = endColumn(v);
+                String label = label(v);
+                String linePrefix = beginLine(v) + ": ";
+                if (lineShift != 0 && beginLine(v) != 0 && label.startsWith(linePrefix)) {
+                    label = (beginLine(v) + lineShift) + ": " + label.substring(linePrefix.length());
+                }
+                labels.append(label);
+                labelOffsets[v + 1] = labels.length();
+                if (reachable(v)) reachable.set(v);
+            }
+            var nodes = new FrozenNodes(kinds, ranges, labels.toString(), labelOffsets, reachable);
+
+            String[] vars = new String[varCount];
+            for (int i = 0; i < varCount; ++i) vars[i] = varName(i);
+            CsrGraph.Plane cfg = new CsrGraph.EdgeBuffer(false).toPlane(nodeCount);
+            var graph = new CsrGraph(nodeCount, cfg, plane(EdgeType.CONTROL), plane(EdgeType.DATA), vars);
+            return new PDG(nodes, graph, fallback(), exceeded());
+        }
+
+        private CsrGraph.Plane plane(EdgeType type) {
+            int m = planeEdges[type.ordinal()];
+            int[] outOffsets = ints(outOffsetsAt(type), nodeCount + 1);
+            int[] targets = ints(targetsAt(type), m);
+            int[] inOffsets = ints(inOffsetsAt(type), nodeCount + 1);
+            int[] sources = ints(sourcesAt(type), m);
+            if (type != EdgeType.DATA) {
+                return new CsrGraph.Plane(outOffsets, targets, inOffsets, sources, null, null, null);
+            }
+            int[] varOffsets = ints(varOffsetsAt(type), m + 1);
+            return new CsrGraph.Plane(outOffsets, targets, inOffsets, sources, ints(inEdgesAt(type), m),
+                                      varOffsets, ints(varIdsAt(type), varOffsets[m]));
+        }
+
+        private int[] ints(int at, int count) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; ++i) values[i] = buf.getInt(at + 4 * i);
+            return values;
+        }
+
+        private int outOffsetsAt(EdgeType type) { return planeAt[type.ordinal()]; }
+        private int targetsAt(EdgeType type) { return outOffsetsAt(type) + 4 * (nodeCount + 1); }
+        private int inOffsetsAt(EdgeType type) { return targetsAt(type) + 4 * planeEdges[type.ordinal()]; }
+        private int sourcesAt(EdgeType type) { return inOffsetsAt(type) + 4 * (nodeCount + 1); }
+        private int inEdgesAt(EdgeType type) { return sourcesAt(type) + 4 * planeEdges[type.ordinal()]; }
+        private int varOffsetsAt(EdgeType type) { return inEdgesAt(type) + 4 * planeEdges[type.ordinal()]; }
+        private int varIdsAt(EdgeType type) { return varOffsetsAt(type) + 4 * (planeEdges[type.ordinal()] + 1); }
+
+        private int nodeInt(int v, int field) {
+            return buf.getInt(nodesAt + v * NODE_BYTES + 4 * field);
+        }
+
+        private String string(int at, int length) {
+            byte[] bytes = new byte[length];
+            buf.get(at, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Prints the graph stored under key, in the format of Main's node and edge dump
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java Main --lookup <store> \"<file>: <types>.<signature>@<line>\"");
+            System.exit(1);
+        }
+        try (Reader reader = new Reader(Path.of(args[0]))) {
+            StoredGraph graph = reader.get(args[1]);
+            if (graph == null) {
+                System.err.println("Not found: " + args[1]);
+                System.exit(1);
+            }
+            if (graph.fallback() != BuildBudget.Fallback.NONE) {
+                System.out.println("// fallback: " + graph.fallback().name().toLowerCase().replace('_', '-')
+                                   + " (" + graph.exceeded() + " budget exceeded)");
+            }
+            for (int v = 0; v < graph.nodeCount(); ++v) {
+                System.out.println("Node" + v + ": " + graph.label(v));
+            }
+            for (EdgeType type : EdgeType.values()) {
+                for (int v = 0; v < graph.nodeCount(); ++v) {
+                    for (int e = graph.outBegin(type, v); e < graph.outEnd(type, v); ++e) {
+                        int t = graph.target(type, e);
+                        var vars = new StringJoiner(", ");
+                        for (int i = graph.outVarBegin(type, e); i < graph.outVarEnd(type, e); ++i) {
+                            vars.add(graph.varName(graph.var(type, i)));
+                        }
+                        System.out.println("Node" + v + ": " + graph.label(v) + " -> Node" + t + ": " + graph.label(t)
+                            + " [" + type + ": " + vars + "]");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // 64-bit FNV-1a
+    static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.itmo.khaser.java_pdg;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event committed at the end of every BuildMetrics phase
+@Name("ru.itmo.khaser.java_pdg.Phase")
+@Label("PDG Phase")
+@Category("PDG")
+@Description("One phase of parsing, building or exporting a PDG")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Subject")
+    @Description("Method signature, or file name for parsing")
+    String subject;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("CFG Edges")
+    int cfgEdges;
+
+    @Label("Control Edges")
+    int controlEdges;
+
+    @Label("Data Edges")
+    int dataEdges;
+
+    @Label("Definitions")
+    int definitions;
+
+    @Label("Basic Blocks")
+    int blocks;
+
+    @Label("Bytes Parsed")
+    @DataAmount
+    long bytesParsed;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
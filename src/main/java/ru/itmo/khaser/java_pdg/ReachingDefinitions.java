@@ -0,0 +1,282 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+
+// Worklist reaching-definitions analysis over the basic blocks of the
+// control flow graph. Every (node, variable) definition gets a dense id; ids
+// of one variable occupy a contiguous range, so uses of a variable only scan
+// their range. Definitions are not killed: a definition reaches every use it
+// has a control flow path to, which is the relation the builder has always
+// produced. So a block generates the definitions of all its nodes, and what
+// reaches a node is what reaches its block plus the definitions of the nodes
+// before it in the block.
+class ReachingDefinitions {
+    interface DependenceSink {
+        void accept(int def, int use, int var);
+    }
+
+    // Dependences of one variable group, as (def, use, var) triples in the
+    // order forEachDependence reports them
+    private static class GroupResult {
+        int[] triples = new int[48];
+        int size;
+
+        void accept(int def, int use, int var) {
+            if (size == triples.length) triples = Arrays.copyOf(triples, size * 2);
+            triples[size++] = def;
+            triples[size++] = use;
+            triples[size++] = var;
+        }
+    }
+
+    private final int nodeCount;
+    private final BasicBlocks blocks;
+    private final CsrGraph.Plane cfg;  // of the blocks
+    private final int[] defNodes;      // definition id -> node
+    private final int[] varDefOffsets; // definitions of var v are [varDefOffsets[v], varDefOffsets[v + 1])
+    private final int[] nodeDefOffsets; // definitions of node v are nodeDefIds[nodeDefOffsets[v]..nodeDefOffsets[v + 1])
+    private final int[] nodeDefIds;
+    private final BitSet[] gen;        // per block
+    private final BitSet[] out;        // per block
+    private final BuildBudget budget;
+
+    // defs[v] are the variable ids defined by node v, null if none
+    ReachingDefinitions(BasicBlocks blocks, int[][] defs, int varCount, BuildBudget budget) {
+        this.nodeCount = blocks.blockOf.length;
+        this.blocks = blocks;
+        this.cfg = blocks.cfg;
+        this.budget = budget;
+
+        // Group definitions by variable, in node order, then number them
+        this.varDefOffsets = new int[varCount + 1];
+        for (int[] defined : defs) {
+            if (defined == null) continue;
+            for (int var : defined) ++varDefOffsets[var + 1];
+        }
+        for (int var = 0; var < varCount; ++var) varDefOffsets[var + 1] += varDefOffsets[var];
+        this.defNodes = new int[varDefOffsets[varCount]];
+        this.nodeDefOffsets = new int[nodeCount + 1];
+        this.nodeDefIds = new int[defNodes.length];
+        this.gen = new BitSet[blocks.blockCount];
+        int[] fill = Arrays.copyOf(varDefOffsets, varCount);
+        int count = 0;
+        for (int v = 0; v < nodeCount; ++v) {
+            if (defs[v] != null && defs[v].length > 0) {
+                int b = blocks.blockOf[v];
+                if (gen[b] == null) gen[b] = new BitSet();
+                for (int var : defs[v]) {
+                    int defId = fill[var]++;
+                    defNodes[defId] = v;
+                    nodeDefIds[count++] = defId;
+                    gen[b].set(defId);
+                }
+            }
+            nodeDefOffsets[v + 1] = count;
+        }
+        this.out = new BitSet[blocks.blockCount];
+    }
+
+    int definitionCount() {
+        return defNodes.length;
+    }
+
+    void solve(int entry) {
+        int n = blocks.blockCount;
+        int[] order = reversePostorder(blocks.blockOf[entry]);
+        int[] rank = new int[n];
+        for (int i = 0; i < n; ++i) {
+            rank[order[i]] = i;
+            out[i] = new BitSet();
+        }
+
+        BitSet pending = new BitSet(n);
+        pending.set(0, n);
+        int cursor = 0;
+        while (!pending.isEmpty()) {
+            int i = pending.nextSetBit(cursor);
+            if (i < 0) i = pending.nextSetBit(0);
+            pending.clear(i);
+            cursor = i + 1;
+            budget.checkTime();
+
+            int b = order[i];
+            BitSet next = in(b);
+            if (gen[b] != null) next.or(gen[b]);
+            if (!next.equals(out[b])) {
+                out[b] = next;
+                for (int e = cfg.outBegin(b); e < cfg.outEnd(b); ++e) {
+                    pending.set(rank[cfg.target(e)]);
+                }
+            }
+        }
+    }
+
+    // uses[v] are the variable ids used by node v, null if none
+    void forEachDependence(int[][] uses, DependenceSink sink) {
+        // What reaches nodes[reached] of block; nodes usually come in flow
+        // order, so in is carried on from one node of a block to the next
+        BitSet in = null;
+        int block = -1;
+        int reached = 0;
+        for (int v = 0; v < nodeCount; ++v) {
+            if (uses[v] == null || uses[v].length == 0) continue;
+            budget.checkTime();
+            int b = blocks.blockOf[v];
+            int at = blocks.position[v];
+            if (b != block || at < reached) {
+                in = in(b);
+                block = b;
+                reached = blocks.nodeOffsets[b];
+            }
+            for (; reached < at; ++reached) {
+                int u = blocks.nodes[reached];
+                for (int k = nodeDefOffsets[u]; k < nodeDefOffsets[u + 1]; ++k) in.set(nodeDefIds[k]);
+            }
+            for (int var : uses[v]) {
+                int end = varDefOffsets[var + 1];
+                for (int d = in.nextSetBit(varDefOffsets[var]); d >= 0 && d < end; d = in.nextSetBit(d + 1)) {
+                    sink.accept(defNodes[d], v, var);
+                }
+            }
+        }
+    }
+
+    // Since definitions are not killed, variables do not interact: the
+    // analysis is split into groups of variables balanced by definition count,
+    // solved as fork-join tasks of the current pool. The sink sees the same
+    // dependences in the same order as from forEachDependence, on this thread.
+    // Returns the number of definitions. The edge budget applies to each
+    // group on its own, the sink checks the total.
+    static int solveByVariableGroups(BasicBlocks blocks, int[][] defs, int[][] uses, int varCount, int entry,
+                                     int groupCount, BuildBudget budget, DependenceSink sink) {
+        int nodeCount = blocks.blockOf.length;
+        int[] defCount = new int[varCount];
+        int definitions = 0;
+        for (int[] defined : defs) {
+            if (defined == null) continue;
+            for (int var : defined) ++defCount[var];
+            definitions += defined.length;
+        }
+
+        // Largest variables first, each to the least loaded group
+        Integer[] byDefs = new Integer[varCount];
+        for (int var = 0; var < varCount; ++var) byDefs[var] = var;
+        Arrays.sort(byDefs, (a, b) -> defCount[a] != defCount[b] ? defCount[b] - defCount[a] : a - b);
+        int[] groupOf = new int[varCount];
+        long[] load = new long[groupCount];
+        for (int var : byDefs) {
+            if (defCount[var] == 0) {
+                groupOf[var] = -1; // used only, no dependences
+                continue;
+            }
+            int least = 0;
+            for (int g = 1; g < groupCount; ++g) {
+                if (load[g] < load[least]) least = g;
+            }
+            groupOf[var] = least;
+            load[least] += defCount[var];
+        }
+
+        List<ForkJoinTask<GroupResult>> tasks = new ArrayList<>(groupCount);
+        for (int g = 0; g < groupCount; ++g) {
+            if (load[g] == 0) break; // groups fill in order, the rest are empty too
+            int group = g;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                var result = new GroupResult();
+                var reaching = new ReachingDefinitions(blocks, select(defs, groupOf, group), varCount, budget);
+                reaching.solve(entry);
+                reaching.forEachDependence(select(uses, groupOf, group), (def, use, var) -> {
+                    budget.checkEdges(result.size / 3 + 1);
+                    result.accept(def, use, var);
+                });
+                return result;
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        // Each group lists its dependences by use node, then by the position
+        // of the variable in the node's uses, so one cursor per group merges them
+        int[] cursor = new int[tasks.size()];
+        for (int v = 0; v < nodeCount; ++v) {
+            if (uses[v] == null) continue;
+            for (int var : uses[v]) {
+                int g = groupOf[var];
+                if (g < 0) continue;
+                GroupResult result = tasks.get(g).join();
+                int[] t = result.triples;
+                while (cursor[g] < result.size && t[cursor[g] + 1] == v && t[cursor[g] + 2] == var) {
+                    sink.accept(t[cursor[g]], v, var);
+                    cursor[g] += 3;
+                }
+            }
+        }
+        return definitions;
+    }
+
+    // The variable ids of each node that belong to group, null if none
+    private static int[][] select(int[][] vars, int[] groupOf, int group) {
+        int[][] selected = new int[vars.length][];
+        for (int v = 0; v < vars.length; ++v) {
+            if (vars[v] == null) continue;
+            int count = 0;
+            for (int var : vars[v]) {
+                if (groupOf[var] == group) ++count;
+            }
+            if (count == 0) continue;
+            selected[v] = new int[count];
+            count = 0;
+            for (int var : vars[v]) {
+                if (groupOf[var] == group) selected[v][count++] = var;
+            }
+        }
+        return selected;
+    }
+
+    // What reaches block b, a new set
+    private BitSet in(int b) {
+        BitSet in = new BitSet();
+        for (int e = cfg.inBegin(b); e < cfg.inEnd(b); ++e) {
+            in.or(out[cfg.source(e)]);
+        }
+        return in;
+    }
+
+    // Of the blocks; blocks not reachable from entry are appended in id order
+    private int[] reversePostorder(int entry) {
+        int n = blocks.blockCount;
+        int[] postorder = new int[n];
+        int count = 0;
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] nextEdge = new int[n];
+
+        int depth = 0;
+        stack[depth++] = entry;
+        visited[entry] = true;
+        nextEdge[entry] = cfg.outBegin(entry);
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            if (nextEdge[v] < cfg.outEnd(v)) {
+                int s = cfg.target(nextEdge[v]++);
+                if (!visited[s]) {
+                    visited[s] = true;
+                    nextEdge[s] = cfg.outBegin(s);
+                    stack[depth++] = s;
+                }
+            } else {
+                postorder[count++] = v;
+                --depth;
+            }
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < count; ++i) {
+            order[i] = postorder[count - 1 - i];
+        }
+        for (int v = 0; v < n; ++v) {
+            if (!visited[v]) order[count++] = v;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,113 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.*;
+
+// System dependence graph: the PDGs of all methods of a project, linked at
+// resolved call sites. Nodes are numbered globally: the nodes of procedure p
+// are [p.offset, p.offset + p.pdg.nodes.size()), parameter nodes come after
+// the nodes of all PDGs. Each EdgeKind is one CSR plane.
+//
+// Every call site gets an actual-in node per argument and an actual-out node
+// for a returned value, every procedure a formal-in node per parameter and a
+// formal-out node. Summary edges actual-in -> actual-out stand for the
+// transitive dependences inside the callee, so slices are computed with the
+// two-phase algorithm of Horwitz, Reps and Binkley without re-entering callees.
+public class SDG {
+    public enum EdgeKind {
+        CONTROL,    // intraprocedural, and call site / entry to its parameter nodes
+        DATA,
+        CALL,       // call site -> callee ENTRY
+        PARAM_IN,   // actual-in -> formal-in
+        PARAM_OUT,  // formal-out -> actual-out
+        SUMMARY     // actual-in -> actual-out
+    }
+
+    public static class Procedure {
+        final String signature; // qualified, or Type.signature if it could not be resolved
+        final String file;
+        final PDG pdg;
+        final int offset;
+
+        Procedure(String signature, String file, PDG pdg, int offset) {
+            this.signature = signature;
+            this.file = file;
+            this.pdg = pdg;
+            this.offset = offset;
+        }
+    }
+
+    final List<Procedure> procedures;
+    final int nodeCount;
+    final int[] owner;        // node -> procedure index
+    final String[] labels;    // labels of parameter nodes, by node - pdgNodeCount
+    final int pdgNodeCount;
+    final CsrGraph.Plane[] planes;
+    final int callSites;
+    final int unresolvedCalls;
+
+    SDG(List<Procedure> procedures, int nodeCount, int[] owner, String[] labels,
+        CsrGraph.Plane[] planes, int callSites, int unresolvedCalls) {
+        this.procedures = procedures;
+        this.nodeCount = nodeCount;
+        this.owner = owner;
+        this.labels = labels;
+        this.pdgNodeCount = nodeCount - labels.length;
+        this.planes = planes;
+        this.callSites = callSites;
+        this.unresolvedCalls = unresolvedCalls;
+    }
+
+    public CsrGraph.Plane plane(EdgeKind kind) {
+        return planes[kind.ordinal()];
+    }
+
+    public Procedure procedure(int node) {
+        return procedures.get(owner[node]);
+    }
+
+    public String label(int node) {
+        if (node >= pdgNodeCount) return labels[node - pdgNodeCount];
+        Procedure p = procedure(node);
+        return p.pdg.nodes.get(node - p.offset).label();
+    }
+
+    // Global id of a node of procedure p's PDG
+    public int node(Procedure p, PDGNode node) {
+        return p.offset + node.id;
+    }
+
+    // Everything node may depend on, across calls. Phase one ascends into
+    // callers and steps over calls through summary edges, phase two descends
+    // into the callees reached, without returning to their callers.
+    public BitSet backwardSlice(int node) {
+        BitSet slice = new BitSet(nodeCount);
+        slice.set(node);
+        int[] worklist = new int[nodeCount];
+        int size = 0;
+        worklist[size++] = node;
+        size = closeBackward(slice, worklist, size, EdgeKind.PARAM_OUT, null);
+
+        size = 0;
+        for (int v = slice.nextSetBit(0); v >= 0; v = slice.nextSetBit(v + 1)) worklist[size++] = v;
+        closeBackward(slice, worklist, size, EdgeKind.PARAM_IN, EdgeKind.CALL);
+        return slice;
+    }
+
+    private int closeBackward(BitSet slice, int[] worklist, int size, EdgeKind skip, EdgeKind skipToo) {
+        while (size > 0) {
+            int v = worklist[--size];
+            for (EdgeKind kind : EdgeKind.values()) {
+                if (kind == skip || kind == skipToo) continue;
+                CsrGraph.Plane plane = plane(kind);
+                for (int e = plane.inBegin(v); e < plane.inEnd(v); ++e) {
+                    int s = plane.source(e);
+                    if (!slice.get(s)) {
+                        slice.set(s);
+                        worklist[size++] = s;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,531 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Builds the SDG of a project. Files are parsed, and their methods' PDGs are
+// built and calls resolved, in parallel, one task per file: the symbol solver
+// caches types on the AST, so a file stays on one thread (see SymbolCache).
+// Linking and summary edges are computed afterwards on the calling thread, in
+// file and method order, so the result is deterministic.
+public class SDGBuilder {
+    static class CallSite {
+        final int node;           // PDG node of the calling statement
+        final String callee;      // qualified signature, null if unresolved
+        final String[] args;      // source text per argument
+        final int[][] argSources; // per argument, PDG nodes whose definitions it reads
+
+        CallSite(int node, String callee, String[] args, int[][] argSources) {
+            this.node = node;
+            this.callee = callee;
+            this.args = args;
+            this.argSources = argSources;
+        }
+    }
+
+    // One method, built and resolved, but not linked yet
+    static class Unit {
+        final String file;
+        final String signature;
+        final boolean resolved;
+        final PDG pdg;
+        final String[] params;
+        final int[][] paramUses; // per parameter, PDG nodes using it
+        final int[] returns;     // PDG nodes returning a value
+        final boolean returnsValue;
+        final List<CallSite> calls;
+
+        Unit(String file, String signature, boolean resolved, PDG pdg, String[] params, int[][] paramUses,
+             int[] returns, boolean returnsValue, List<CallSite> calls) {
+            this.file = file;
+            this.signature = signature;
+            this.resolved = resolved;
+            this.pdg = pdg;
+            this.params = params;
+            this.paramUses = paramUses;
+            this.returns = returns;
+            this.returnsValue = returnsValue;
+            this.calls = calls;
+        }
+    }
+
+    // A linked call site, as seen by the summary computation
+    private static class Link {
+        final int caller;      // procedure index
+        final int[] actualIns; // by argument
+        final int actualOut;
+
+        Link(int caller, int[] actualIns, int actualOut) {
+            this.caller = caller;
+            this.actualIns = actualIns;
+            this.actualOut = actualOut;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final SymbolCache symbols = new SymbolCache();
+
+    public SDGBuilder(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String slice = null;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--slice") && i + 1 < args.length) {
+                slice = args[++i];
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: java Main --sdg [--threads <n>] [--slice <file>:<line>] <source-root-or-file>...");
+            System.exit(1);
+        }
+
+        try {
+            var builder = new SDGBuilder(parallelism);
+            SDG sdg = builder.build(inputs);
+            if (slice != null) {
+                printSlice(sdg, slice);
+            } else {
+                printSummary(sdg);
+                System.out.println(builder.symbols.stats());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public SymbolCache symbols() {
+        return symbols;
+    }
+
+    public SDG build(List<Path> inputs) throws IOException {
+        try {
+            List<BatchRunner.Source> sources = BatchRunner.collectSources(inputs);
+            List<ForkJoinTask<CompilationUnit>> parses = new ArrayList<>();
+            for (BatchRunner.Source source : sources) {
+                parses.add(pool.submit(() -> parse(source)));
+            }
+            List<CompilationUnit> units = new ArrayList<>();
+            for (var parse : parses) {
+                units.add(parse.join());
+            }
+
+            Set<Path> roots = new LinkedHashSet<>();
+            for (int i = 0; i < sources.size(); ++i) {
+                if (units.get(i) != null) roots.add(packageRoot(sources.get(i).path, units.get(i)));
+            }
+            for (Path root : roots) {
+                symbols.addSourceRoot(root);
+            }
+
+            List<ForkJoinTask<List<Unit>>> builds = new ArrayList<>();
+            for (int i = 0; i < sources.size(); ++i) {
+                if (units.get(i) == null) continue;
+                String file = sources.get(i).name;
+                CompilationUnit cu = units.get(i);
+                builds.add(pool.submit(() -> buildUnits(file, cu)));
+            }
+            List<Unit> built = new ArrayList<>();
+            for (var build : builds) {
+                built.addAll(build.join());
+            }
+            return link(built);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private CompilationUnit parse(BatchRunner.Source source) {
+        try {
+            // JavaParser instances are not thread-safe, the configuration is only read
+            var result = new JavaParser(symbols.parserConfiguration()).parse(Files.readString(source.path));
+            if (result.getResult().isPresent()) return result.getResult().get();
+            System.err.println(source.name + ": Failed to parse the file");
+        } catch (IOException e) {
+            System.err.println(source.name + ": Error reading file: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // The directory the file's package path starts in
+    private static Path packageRoot(Path file, CompilationUnit cu) {
+        Path root = file.toAbsolutePath().getParent();
+        if (cu.getPackageDeclaration().isPresent()) {
+            int depth = cu.getPackageDeclaration().get().getNameAsString().split("\\.").length;
+            for (int i = 0; i < depth && root.getParent() != null; ++i) {
+                root = root.getParent();
+            }
+        }
+        return root;
+    }
+
+    private List<Unit> buildUnits(String file, CompilationUnit cu) {
+        List<Unit> built = new ArrayList<>();
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            built.add(buildUnit(file, method));
+        }
+        return built;
+    }
+
+    private Unit buildUnit(String file, MethodDeclaration method) {
+        var builder = new PDGBuilder(method);
+        PDG pdg = builder.build();
+        String qualified = symbols.qualifiedSignature(method);
+        String signature = qualified != null ? qualified : typeName(method) + method.getSignature().asString();
+
+        String[] params = new String[method.getParameters().size()];
+        int[][] paramUses = new int[params.length][];
+        for (int k = 0; k < params.length; ++k) {
+            params[k] = method.getParameter(k).getNameAsString();
+            paramUses[k] = entryUses(pdg, builder, builder.varId(params[k]));
+        }
+
+        List<Integer> returns = new ArrayList<>();
+        List<CallSite> calls = new ArrayList<>();
+        for (PDGNode node : pdg.nodes) {
+            if (node.statement == null || !node.reachable) continue;
+            if (node.statement instanceof ReturnStmt && ((ReturnStmt) node.statement).getExpression().isPresent()) {
+                returns.add(node.id);
+            }
+            for (Node part : PDGBuilder.analyzedParts(node.statement)) {
+                for (MethodCallExpr call : part.findAll(MethodCallExpr.class)) {
+                    calls.add(callSite(pdg, builder, node, call));
+                }
+            }
+        }
+        // Calls and parameters are extracted, the SDG keeps no AST
+        return new Unit(file, signature, qualified != null, pdg.freeze(), params, paramUses,
+                        returns.stream().mapToInt(Integer::intValue).toArray(),
+                        !method.getType().isVoidType(), calls);
+    }
+
+    // Nodes that read var's value on entry: the uses reached from ENTRY along
+    // the CFG without passing a redefinition. A node that reads and redefines
+    // var reads the entry value
+    private static int[] entryUses(PDG pdg, PDGBuilder builder, int var) {
+        if (var < 0) return new int[0];
+        if (pdg.fallback == BuildBudget.Fallback.SUMMARY) return new int[] {2}; // the body stands for every use
+        var cfg = pdg.graph.cfg;
+        BitSet uses = new BitSet();
+        boolean[] seen = new boolean[pdg.graph.nodeCount];
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.add(0);
+        seen[0] = true;
+        while (!worklist.isEmpty()) {
+            int v = worklist.poll();
+            if (v != 0) {
+                if (contains(builder.varsUsed(v), var)) uses.set(v);
+                if (contains(builder.varsDefined(v), var)) continue;
+            }
+            for (int e = cfg.outBegin(v); e < cfg.outEnd(v); ++e) {
+                int w = cfg.target(e);
+                if (!seen[w]) {
+                    seen[w] = true;
+                    worklist.add(w);
+                }
+            }
+        }
+        return uses.stream().toArray();
+    }
+
+    private static boolean contains(int[] vars, int var) {
+        if (vars == null) return false;
+        for (int v : vars) {
+            if (v == var) return true;
+        }
+        return false;
+    }
+
+    // An argument reads the definitions that reach the call's statement for
+    // the variables named in the argument
+    private CallSite callSite(PDG pdg, PDGBuilder builder, PDGNode node, MethodCallExpr call) {
+        var data = pdg.graph.data;
+        String[] args = new String[call.getArguments().size()];
+        int[][] argSources = new int[args.length][];
+        for (int k = 0; k < args.length; ++k) {
+            Expression arg = call.getArgument(k);
+            args[k] = arg.toString();
+            BitSet vars = new BitSet();
+            for (NameExpr name : arg.findAll(NameExpr.class)) {
+                int var = builder.varId(name.getNameAsString());
+                if (var >= 0) vars.set(var);
+            }
+            BitSet sources = new BitSet();
+            for (int e = data.inBegin(node.id); e < data.inEnd(node.id); ++e) {
+                for (int i = data.inVarBegin(e); i < data.inVarEnd(e); ++i) {
+                    if (vars.get(data.var(i))) sources.set(data.source(e));
+                }
+            }
+            argSources[k] = sources.stream().toArray();
+        }
+        return new CallSite(node.id, symbols.resolveCall(call), args, argSources);
+    }
+
+    private static String typeName(MethodDeclaration method) {
+        for (Node parent = method.getParentNode().orElse(null); parent != null; parent = parent.getParentNode().orElse(null)) {
+            if (parent instanceof TypeDeclaration) {
+                return ((TypeDeclaration<?>) parent).getNameAsString() + ".";
+            }
+        }
+        return "";
+    }
+
+    private static class NodeTable {
+        final List<String> labels = new ArrayList<>();
+        int[] owner;
+        final int first;
+
+        NodeTable(int first, int[] pdgOwner) {
+            this.first = first;
+            this.owner = pdgOwner;
+        }
+
+        int add(String label, int procedure) {
+            int id = first + labels.size();
+            if (id == owner.length) owner = Arrays.copyOf(owner, Math.max(16, id * 2));
+            owner[id] = procedure;
+            labels.add(label);
+            return id;
+        }
+    }
+
+    private SDG link(List<Unit> units) {
+        List<SDG.Procedure> procedures = new ArrayList<>(units.size());
+        Map<String, Integer> bySignature = new HashMap<>();
+        int offset = 0;
+        for (int i = 0; i < units.size(); ++i) {
+            Unit unit = units.get(i);
+            procedures.add(new SDG.Procedure(unit.signature, unit.file, unit.pdg, offset));
+            if (unit.resolved) bySignature.putIfAbsent(unit.signature, i);
+            offset += unit.pdg.nodes.size();
+        }
+        int[] pdgOwner = new int[offset];
+        for (int i = 0; i < units.size(); ++i) {
+            int begin = procedures.get(i).offset;
+            Arrays.fill(pdgOwner, begin, begin + units.get(i).pdg.nodes.size(), i);
+        }
+        var table = new NodeTable(offset, pdgOwner);
+
+        CsrGraph.EdgeBuffer[] edges = new CsrGraph.EdgeBuffer[SDG.EdgeKind.values().length];
+        for (int k = 0; k < edges.length; ++k) edges[k] = new CsrGraph.EdgeBuffer(false);
+        var control = edges[SDG.EdgeKind.CONTROL.ordinal()];
+        var data = edges[SDG.EdgeKind.DATA.ordinal()];
+
+        // Intraprocedural edges and formal parameter nodes
+        int[][] formalIns = new int[units.size()][];
+        int[] formalOut = new int[units.size()];
+        for (int i = 0; i < units.size(); ++i) {
+            Unit unit = units.get(i);
+            int base = procedures.get(i).offset;
+            CsrGraph graph = unit.pdg.graph;
+            for (int v = 0; v < graph.nodeCount; ++v) {
+                for (int e = graph.control.outBegin(v); e < graph.control.outEnd(v); ++e) {
+                    control.add(base + v, base + graph.control.target(e), -1);
+                }
+                for (int e = graph.data.outBegin(v); e < graph.data.outEnd(v); ++e) {
+                    data.add(base + v, base + graph.data.target(e), -1);
+                }
+            }
+            formalIns[i] = new int[unit.params.length];
+            for (int k = 0; k < unit.params.length; ++k) {
+                int formal = table.add("formal-in: " + unit.params[k], i);
+                formalIns[i][k] = formal;
+                control.add(base, formal, -1);
+                for (int use : unit.paramUses[k]) data.add(formal, base + use, -1);
+            }
+            formalOut[i] = -1;
+            if (unit.returnsValue) {
+                formalOut[i] = table.add("formal-out", i);
+                control.add(base, formalOut[i], -1);
+                for (int ret : unit.returns) data.add(base + ret, formalOut[i], -1);
+            }
+        }
+
+        // Call sites linked to callees in the project
+        List<List<Link>> callers = new ArrayList<>(units.size());
+        for (int i = 0; i < units.size(); ++i) callers.add(new ArrayList<>());
+        int callSites = 0;
+        int unresolved = 0;
+        for (int i = 0; i < units.size(); ++i) {
+            int base = procedures.get(i).offset;
+            for (CallSite site : units.get(i).calls) {
+                ++callSites;
+                if (site.callee == null) ++unresolved;
+                Integer callee = site.callee != null ? bySignature.get(site.callee) : null;
+                if (callee == null) continue;
+                int call = base + site.node;
+                edges[SDG.EdgeKind.CALL.ordinal()].add(call, procedures.get(callee).offset, -1);
+
+                int[] actualIns = new int[site.args.length];
+                for (int k = 0; k < site.args.length; ++k) {
+                    actualIns[k] = table.add("actual-in: " + site.args[k], i);
+                    control.add(call, actualIns[k], -1);
+                    for (int source : site.argSources[k]) data.add(base + source, actualIns[k], -1);
+                    int param = Math.min(k, formalIns[callee].length - 1); // varargs share the last one
+                    if (param >= 0) edges[SDG.EdgeKind.PARAM_IN.ordinal()].add(actualIns[k], formalIns[callee][param], -1);
+                }
+                if (formalOut[callee] >= 0) {
+                    int actualOut = table.add("actual-out: " + units.get(callee).signature, i);
+                    control.add(call, actualOut, -1);
+                    data.add(actualOut, call, -1);
+                    edges[SDG.EdgeKind.PARAM_OUT.ordinal()].add(formalOut[callee], actualOut, -1);
+                    callers.get(callee).add(new Link(i, actualIns, actualOut));
+                }
+            }
+        }
+
+        int nodeCount = offset + table.labels.size();
+        CsrGraph.Plane[] planes = new CsrGraph.Plane[edges.length];
+        planes[SDG.EdgeKind.CONTROL.ordinal()] = control.toPlane(nodeCount);
+        planes[SDG.EdgeKind.DATA.ordinal()] = data.toPlane(nodeCount);
+        addSummaries(planes, nodeCount, formalIns, formalOut, callers, edges[SDG.EdgeKind.SUMMARY.ordinal()]);
+        for (SDG.EdgeKind kind : SDG.EdgeKind.values()) {
+            if (planes[kind.ordinal()] == null) planes[kind.ordinal()] = edges[kind.ordinal()].toPlane(nodeCount);
+        }
+        return new SDG(procedures, nodeCount, Arrays.copyOf(table.owner, nodeCount),
+                       table.labels.toArray(new String[0]), planes, callSites, unresolved);
+    }
+
+    // Summary edges by fixpoint: the formal-ins a procedure's formal-out
+    // depends on, within the procedure and over summary edges of the calls it
+    // makes, become summary edges at all its call sites. A new summary edge
+    // makes the caller's formal-out depend on more, so the caller is redone.
+    private static void addSummaries(CsrGraph.Plane[] planes, int nodeCount, int[][] formalIns, int[] formalOut,
+                                     List<List<Link>> callers, CsrGraph.EdgeBuffer summary) {
+        CsrGraph.Plane control = planes[SDG.EdgeKind.CONTROL.ordinal()];
+        CsrGraph.Plane data = planes[SDG.EdgeKind.DATA.ordinal()];
+        Map<Integer, List<Integer>> summaryIns = new HashMap<>(); // actual-out -> actual-ins
+        Set<Long> added = new HashSet<>();
+
+        int procedureCount = formalOut.length;
+        int[] formalIndex = new int[nodeCount];
+        Arrays.fill(formalIndex, -1);
+        for (int[] ins : formalIns) {
+            for (int k = 0; k < ins.length; ++k) formalIndex[ins[k]] = k;
+        }
+
+        Deque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[procedureCount];
+        for (int p = 0; p < procedureCount; ++p) {
+            if (formalOut[p] >= 0 && !callers.get(p).isEmpty()) {
+                worklist.add(p);
+                queued[p] = true;
+            }
+        }
+        int[] seen = new int[nodeCount];
+        int stamp = 0;
+        int[] stack = new int[nodeCount];
+        while (!worklist.isEmpty()) {
+            int p = worklist.poll();
+            queued[p] = false;
+            ++stamp;
+
+            BitSet params = new BitSet();
+            int depth = 0;
+            stack[depth++] = formalOut[p];
+            seen[formalOut[p]] = stamp;
+            while (depth > 0) {
+                int v = stack[--depth];
+                if (formalIndex[v] >= 0) params.set(formalIndex[v]);
+                for (int e = control.inBegin(v); e < control.inEnd(v); ++e) {
+                    int s = control.source(e);
+                    if (seen[s] != stamp) { seen[s] = stamp; stack[depth++] = s; }
+                }
+                for (int e = data.inBegin(v); e < data.inEnd(v); ++e) {
+                    int s = data.source(e);
+                    if (seen[s] != stamp) { seen[s] = stamp; stack[depth++] = s; }
+                }
+                for (int s : summaryIns.getOrDefault(v, List.of())) {
+                    if (seen[s] != stamp) { seen[s] = stamp; stack[depth++] = s; }
+                }
+            }
+
+            for (Link link : callers.get(p)) {
+                boolean changed = false;
+                for (int k = 0; k < link.actualIns.length; ++k) {
+                    int param = Math.min(k, formalIns[p].length - 1);
+                    if (param < 0 || !params.get(param)) continue;
+                    if (added.add((long) link.actualIns[k] * nodeCount + link.actualOut)) {
+                        summaryIns.computeIfAbsent(link.actualOut, x -> new ArrayList<>()).add(link.actualIns[k]);
+                        summary.add(link.actualIns[k], link.actualOut, -1);
+                        changed = true;
+                    }
+                }
+                int caller = link.caller;
+                if (changed && formalOut[caller] >= 0 && !callers.get(caller).isEmpty() && !queued[caller]) {
+                    worklist.add(caller);
+                    queued[caller] = true;
+                }
+            }
+        }
+    }
+
+    private static void printSummary(SDG sdg) {
+        System.out.println("procedures: " + sdg.procedures.size());
+        System.out.println("nodes: " + sdg.nodeCount + " (" + (sdg.nodeCount - sdg.pdgNodeCount) + " parameter nodes)");
+        var edges = new StringBuilder("edges:");
+        for (SDG.EdgeKind kind : SDG.EdgeKind.values()) {
+            edges.append(" ").append(kind).append(" ").append(sdg.plane(kind).edgeCount());
+        }
+        System.out.println(edges);
+        System.out.println("call sites: " + sdg.callSites + ", linked " + sdg.plane(SDG.EdgeKind.CALL).edgeCount()
+                           + ", unresolved " + sdg.unresolvedCalls);
+    }
+
+    // criterion is <file>:<line>, the slice starts at the first node whose
+    // statement begins on that line in a file whose name ends with <file>
+    private static void printSlice(SDG sdg, String criterion) {
+        int colon = criterion.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Slice criterion must be <file>:<line>");
+        String file = criterion.substring(0, colon);
+        int line = Integer.parseInt(criterion.substring(colon + 1));
+
+        int start = -1;
+        for (SDG.Procedure p : sdg.procedures) {
+            if (!p.file.endsWith(file)) continue;
+            for (PDGNode node : p.pdg.nodes) {
+                if (node.beginLine() == line) {
+                    start = sdg.node(p, node);
+                    break;
+                }
+            }
+            if (start >= 0) break;
+        }
+        if (start < 0) throw new IllegalArgumentException("No statement starts on line " + line + " of " + file);
+
+        BitSet slice = sdg.backwardSlice(start);
+        SDG.Procedure current = null;
+        for (int v = slice.nextSetBit(0); v >= 0; v = slice.nextSetBit(v + 1)) {
+            if (v >= sdg.pdgNodeCount) break; // parameter nodes are implied by their statements
+            SDG.Procedure p = sdg.procedure(v);
+            if (p != current) {
+                current = p;
+                System.out.println(p.file + ": " + p.signature);
+            }
+            System.out.println("  " + sdg.label(v));
+        }
+    }
+}
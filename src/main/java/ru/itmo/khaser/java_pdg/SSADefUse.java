@@ -0,0 +1,443 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.Arrays;
+
+// Def-use chains of the CFG in static single assignment form, the sparse
+// alternative to ReachingDefinitions. Phi functions are placed at the iterated
+// dominance frontiers of each variable's definitions (Cytron et al.), with
+// dominators from the algorithm of Cooper, Harvey and Kennedy, and a walk of
+// the dominator tree renames every use to the one value that reaches it.
+//
+// Unlike ReachingDefinitions, a definition is killed by the next definition
+// of its variable, so a use only depends on definitions it can see. A node
+// reads its uses before it writes its definitions. The PDG has no nodes for
+// phi functions: a use reached by a phi depends on the definitions merged by
+// it, transitively, resolved once per phi and only for phis some use reaches.
+// Nodes not reachable from entry get no dependences.
+class SSADefUse {
+    private static final int UNDEFINED = -1; // values are def nodes, UNDEFINED, or ~(phi + 1)
+
+    private final int nodeCount;
+    private final CsrGraph.Plane cfg;
+    private final int[][] defs;
+    private final int[][] uses;
+    private final int varCount;
+    private final int entry;
+    private final BuildBudget budget;
+
+    private int[] order;        // reverse post-order of the reachable nodes
+    private int[] rank;         // position in order, -1 if not reachable
+    private int[] idom;
+    private int[] phiOffsets;   // phis at node v are [phiOffsets[v], phiOffsets[v + 1])
+    private int[] phiVars;
+    private int[] argOffsets;   // arguments of phi p are args[argOffsets[p], argOffsets[p + 1]), one per predecessor
+    private int[] args;
+    private int[] useOffsets;   // value read by the i-th use of v is useValues[useOffsets[v] + i]
+    private int[] useValues;
+    private int[][] resolved;   // definitions merged by a phi, sorted; shared by phis that merge the same
+    // Tarjan's state, kept across calls to resolve; a visited phi is resolved
+    private int[] index;
+    private int[] low;
+    private int[] cursor;
+    private int[] callStack;
+    private int[] component;
+    private boolean[] onComponentStack;
+    private int counter;
+
+    // defs[v] and uses[v] are the variable ids defined and used by node v, null if none
+    SSADefUse(int nodeCount, CsrGraph.Plane cfg, int[][] defs, int[][] uses, int varCount, int entry,
+              BuildBudget budget) {
+        this.nodeCount = nodeCount;
+        this.cfg = cfg;
+        this.defs = defs;
+        this.uses = uses;
+        this.varCount = varCount;
+        this.entry = entry;
+        this.budget = budget;
+    }
+
+    int definitionCount() {
+        int count = 0;
+        for (int[] defined : defs) {
+            if (defined != null) count += defined.length;
+        }
+        return count;
+    }
+
+    int phiCount() {
+        return phiVars.length;
+    }
+
+    void solve() {
+        reversePostorder();
+        dominators();
+        placePhis(dominanceFrontiers());
+        rename();
+        resolved = new int[phiVars.length][];
+    }
+
+    // In the order of ReachingDefinitions.forEachDependence: by use node, by
+    // the variable's position in the node's uses, then by definition node
+    void forEachDependence(ReachingDefinitions.DependenceSink sink) {
+        for (int v = 0; v < nodeCount; ++v) {
+            if (uses[v] == null || rank[v] < 0) continue;
+            for (int i = 0; i < uses[v].length; ++i) {
+                int value = useValues[useOffsets[v] + i];
+                if (value >= 0) {
+                    sink.accept(value, v, uses[v][i]);
+                } else if (value != UNDEFINED) {
+                    for (int def : resolve(~value - 1)) sink.accept(def, v, uses[v][i]);
+                }
+            }
+        }
+    }
+
+    private void reversePostorder() {
+        int[] postorder = new int[nodeCount];
+        int count = 0;
+        rank = new int[nodeCount];
+        Arrays.fill(rank, -1);
+        int[] stack = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+
+        int depth = 0;
+        stack[depth++] = entry;
+        rank[entry] = 0;
+        nextEdge[entry] = cfg.outBegin(entry);
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            if (nextEdge[v] < cfg.outEnd(v)) {
+                int s = cfg.target(nextEdge[v]++);
+                if (rank[s] < 0) {
+                    rank[s] = 0;
+                    nextEdge[s] = cfg.outBegin(s);
+                    stack[depth++] = s;
+                }
+            } else {
+                postorder[count++] = v;
+                --depth;
+            }
+        }
+
+        order = new int[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = postorder[count - 1 - i];
+            rank[order[i]] = i;
+        }
+    }
+
+    // Cooper, Harvey, Kennedy, "A Simple, Fast Dominance Algorithm"
+    private void dominators() {
+        idom = new int[nodeCount];
+        Arrays.fill(idom, -1);
+        idom[entry] = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < order.length; ++i) {
+                int v = order[i];
+                budget.checkTime();
+                int dom = -1;
+                for (int e = cfg.inBegin(v); e < cfg.inEnd(v); ++e) {
+                    int p = cfg.source(e);
+                    if (idom[p] == -1) continue;
+                    dom = dom == -1 ? p : intersect(p, dom);
+                }
+                if (dom != idom[v]) {
+                    idom[v] = dom;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (rank[a] > rank[b]) a = idom[a];
+            while (rank[b] > rank[a]) b = idom[b];
+        }
+        return a;
+    }
+
+    // For every join node b, b is in the frontier of the nodes on the
+    // dominator tree paths from its predecessors up to, excluding, idom(b).
+    // Returns the frontiers as [offsets of n + 1, nodes...]
+    private int[][] dominanceFrontiers() {
+        int[] offsets = new int[nodeCount + 1];
+        int[] lastSeen = new int[nodeCount];
+        int[] frontier = null;
+        // Counted in the first pass, filled in the second
+        for (int pass = 0; pass < 2; ++pass) {
+            Arrays.fill(lastSeen, -1);
+            int[] fill = pass == 0 ? null : Arrays.copyOf(offsets, nodeCount);
+            for (int b : order) {
+                if (cfg.inEnd(b) - cfg.inBegin(b) < 2) continue;
+                for (int e = cfg.inBegin(b); e < cfg.inEnd(b); ++e) {
+                    for (int runner = cfg.source(e); runner != idom[b]; runner = idom[runner]) {
+                        if (lastSeen[runner] == b) break; // the rest of the path is done too
+                        lastSeen[runner] = b;
+                        if (pass == 0) ++offsets[runner + 1];
+                        else frontier[fill[runner]++] = b;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int v = 0; v < nodeCount; ++v) offsets[v + 1] += offsets[v];
+                frontier = new int[offsets[nodeCount]];
+            }
+        }
+        return new int[][] { offsets, frontier };
+    }
+
+    // Minimal SSA, restricted to variables that are both defined and used
+    private void placePhis(int[][] frontiers) {
+        int[] offsets = frontiers[0];
+        int[] frontier = frontiers[1];
+        boolean[] used = new boolean[varCount];
+        for (int v : order) {
+            if (uses[v] == null) continue;
+            for (int var : uses[v]) used[var] = true;
+        }
+
+        // Definition nodes of each variable
+        int[] defOffsets = new int[varCount + 1];
+        for (int v : order) {
+            if (defs[v] == null) continue;
+            for (int var : defs[v]) ++defOffsets[var + 1];
+        }
+        for (int var = 0; var < varCount; ++var) defOffsets[var + 1] += defOffsets[var];
+        int[] defNodes = new int[defOffsets[varCount]];
+        int[] fill = Arrays.copyOf(defOffsets, varCount);
+        for (int v : order) {
+            if (defs[v] == null) continue;
+            for (int var : defs[v]) defNodes[fill[var]++] = v;
+        }
+
+        // (node, var) of every phi, in placement order
+        int[] placed = new int[16];
+        int phiCount = 0;
+        int[] hasPhi = new int[nodeCount]; // var + 1 of the last phi placed at a node
+        int[] queued = new int[nodeCount];
+        int[] worklist = new int[nodeCount];
+        for (int var = 0; var < varCount; ++var) {
+            if (!used[var] || defOffsets[var] == defOffsets[var + 1]) continue;
+            int size = 0;
+            for (int d = defOffsets[var]; d < defOffsets[var + 1]; ++d) {
+                queued[defNodes[d]] = var + 1;
+                worklist[size++] = defNodes[d];
+            }
+            while (size > 0) {
+                int v = worklist[--size];
+                budget.checkTime();
+                for (int f = offsets[v]; f < offsets[v + 1]; ++f) {
+                    int b = frontier[f];
+                    if (hasPhi[b] == var + 1) continue;
+                    hasPhi[b] = var + 1;
+                    if (phiCount * 2 == placed.length) placed = Arrays.copyOf(placed, placed.length * 2);
+                    placed[2 * phiCount] = b;
+                    placed[2 * phiCount + 1] = var;
+                    ++phiCount;
+                    if (queued[b] != var + 1) {
+                        queued[b] = var + 1;
+                        worklist[size++] = b;
+                    }
+                }
+            }
+        }
+
+        phiOffsets = new int[nodeCount + 1];
+        for (int p = 0; p < phiCount; ++p) ++phiOffsets[placed[2 * p] + 1];
+        for (int v = 0; v < nodeCount; ++v) phiOffsets[v + 1] += phiOffsets[v];
+        phiVars = new int[phiCount];
+        fill = Arrays.copyOf(phiOffsets, nodeCount);
+        for (int p = 0; p < phiCount; ++p) phiVars[fill[placed[2 * p]]++] = placed[2 * p + 1];
+
+        argOffsets = new int[phiCount + 1];
+        for (int v = 0; v < nodeCount; ++v) {
+            for (int p = phiOffsets[v]; p < phiOffsets[v + 1]; ++p) {
+                argOffsets[p + 1] = argOffsets[p] + cfg.inEnd(v) - cfg.inBegin(v);
+            }
+        }
+        args = new int[argOffsets[phiCount]];
+    }
+
+    // Walks the dominator tree keeping the current value of every variable;
+    // the values a node pushes are undone through a log when its subtree is left
+    private void rename() {
+        int n = nodeCount;
+        int[] childOffsets = new int[n + 1];
+        for (int v : order) {
+            if (v != entry) ++childOffsets[idom[v] + 1];
+        }
+        for (int v = 0; v < n; ++v) childOffsets[v + 1] += childOffsets[v];
+        int[] children = new int[childOffsets[n]];
+        int[] fill = Arrays.copyOf(childOffsets, n);
+        for (int v : order) {
+            if (v != entry) children[fill[idom[v]]++] = v;
+        }
+
+        useOffsets = new int[n + 1];
+        for (int v = 0; v < n; ++v) {
+            useOffsets[v + 1] = useOffsets[v] + (uses[v] != null && rank[v] >= 0 ? uses[v].length : 0);
+        }
+        useValues = new int[useOffsets[n]];
+        int[] argFill = Arrays.copyOf(argOffsets, phiVars.length);
+
+        int[] current = new int[varCount];
+        Arrays.fill(current, UNDEFINED);
+        int[] log = new int[16];  // (var, previous value) pairs
+        int logSize = 0;
+        int[] logMark = new int[n];
+        int[] stack = new int[2 * order.length]; // v to enter, ~v to leave
+        int depth = 0;
+        stack[depth++] = entry;
+        while (depth > 0) {
+            int v = stack[--depth];
+            if (v < 0) {
+                v = ~v;
+                for (; logSize > logMark[v]; logSize -= 2) current[log[logSize - 2]] = log[logSize - 1];
+                continue;
+            }
+            budget.checkTime();
+            logMark[v] = logSize;
+            int pushes = (phiOffsets[v + 1] - phiOffsets[v]) + (defs[v] != null ? defs[v].length : 0);
+            if (logSize + 2 * pushes > log.length) log = Arrays.copyOf(log, Math.max(log.length * 2, logSize + 2 * pushes));
+
+            for (int p = phiOffsets[v]; p < phiOffsets[v + 1]; ++p) {
+                log[logSize++] = phiVars[p];
+                log[logSize++] = current[phiVars[p]];
+                current[phiVars[p]] = ~(p + 1);
+            }
+            if (uses[v] != null) {
+                for (int i = 0; i < uses[v].length; ++i) useValues[useOffsets[v] + i] = current[uses[v][i]];
+            }
+            if (defs[v] != null) {
+                for (int var : defs[v]) {
+                    log[logSize++] = var;
+                    log[logSize++] = current[var];
+                    current[var] = v;
+                }
+            }
+            for (int e = cfg.outBegin(v); e < cfg.outEnd(v); ++e) {
+                int s = cfg.target(e);
+                for (int p = phiOffsets[s]; p < phiOffsets[s + 1]; ++p) args[argFill[p]++] = current[phiVars[p]];
+            }
+
+            stack[depth++] = ~v;
+            for (int c = childOffsets[v + 1] - 1; c >= childOffsets[v]; --c) stack[depth++] = children[c];
+        }
+    }
+
+    // Tarjan's algorithm over the phis reachable from root through phi
+    // arguments; components finish after the ones they reach, so each merges
+    // the definitions among its own arguments with the sets already resolved
+    private int[] resolve(int root) {
+        if (resolved[root] != null) return resolved[root];
+        if (index == null) {
+            int phiCount = phiVars.length;
+            index = new int[phiCount]; // discovery number, 0 before the visit
+            low = new int[phiCount];
+            cursor = new int[phiCount];
+            callStack = new int[phiCount];
+            component = new int[phiCount];
+            onComponentStack = new boolean[phiCount];
+        }
+        int calls = 0;
+        int componentSize = 0;
+
+        callStack[calls++] = root;
+        index[root] = low[root] = ++counter;
+        cursor[root] = argOffsets[root];
+        component[componentSize++] = root;
+        onComponentStack[root] = true;
+        while (calls > 0) {
+            int p = callStack[calls - 1];
+            budget.checkTime();
+            if (cursor[p] < argOffsets[p + 1]) {
+                int value = args[cursor[p]++];
+                if (value >= UNDEFINED) continue;
+                int q = ~value - 1;
+                if (resolved[q] != null) continue;
+                if (index[q] == 0) {
+                    index[q] = low[q] = ++counter;
+                    cursor[q] = argOffsets[q];
+                    component[componentSize++] = q;
+                    onComponentStack[q] = true;
+                    callStack[calls++] = q;
+                } else if (onComponentStack[q]) {
+                    low[p] = Math.min(low[p], index[q]);
+                }
+                continue;
+            }
+            --calls;
+            if (calls > 0) {
+                int caller = callStack[calls - 1];
+                low[caller] = Math.min(low[caller], low[p]);
+            }
+            if (low[p] != index[p]) continue;
+
+            int begin = componentSize;
+            do {
+                onComponentStack[component[--begin]] = false;
+            } while (component[begin] != p);
+            int[] merged = merge(component, begin, componentSize);
+            for (int i = begin; i < componentSize; ++i) resolved[component[i]] = merged;
+            componentSize = begin;
+        }
+        return resolved[root];
+    }
+
+    // Definitions merged by the phis component[begin, end), which form one
+    // component; phis outside it are resolved already
+    private int[] merge(int[] component, int begin, int end) {
+        int[] shared = null;
+        boolean single = true;
+        for (int i = begin; i < end && single; ++i) {
+            int p = component[i];
+            for (int a = argOffsets[p]; a < argOffsets[p + 1]; ++a) {
+                int value = args[a];
+                if (value == UNDEFINED) continue;
+                int[] set = value >= 0 ? null : resolved[~value - 1];
+                if (value >= 0) {
+                    single = false;
+                } else if (set != null) {
+                    if (shared == null) shared = set;
+                    else if (shared != set) single = false;
+                }
+            }
+        }
+        // A phi that only forwards one resolved set, as along a chain of joins
+        if (single) return shared != null ? shared : new int[0];
+
+        int size = 0;
+        for (int i = begin; i < end; ++i) {
+            int p = component[i];
+            for (int a = argOffsets[p]; a < argOffsets[p + 1]; ++a) {
+                int value = args[a];
+                if (value >= 0) ++size;
+                else if (value != UNDEFINED && resolved[~value - 1] != null) size += resolved[~value - 1].length;
+            }
+        }
+        int[] defsMerged = new int[size];
+        size = 0;
+        for (int i = begin; i < end; ++i) {
+            int p = component[i];
+            for (int a = argOffsets[p]; a < argOffsets[p + 1]; ++a) {
+                int value = args[a];
+                if (value >= 0) {
+                    defsMerged[size++] = value;
+                } else if (value != UNDEFINED && resolved[~value - 1] != null) {
+                    int[] set = resolved[~value - 1];
+                    System.arraycopy(set, 0, defsMerged, size, set.length);
+                    size += set.length;
+                }
+            }
+        }
+        Arrays.sort(defsMerged);
+        int distinct = 0;
+        for (int i = 0; i < size; ++i) {
+            if (i == 0 || defsMerged[i] != defsMerged[i - 1]) defsMerged[distinct++] = defsMerged[i];
+        }
+        return Arrays.copyOf(defsMerged, distinct);
+    }
+}
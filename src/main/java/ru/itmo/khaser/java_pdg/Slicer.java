@@ -0,0 +1,281 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.util.*;
+
+// Backward/forward slices and chops over the CONTROL and DATA planes of a PDG.
+//
+// The dependence graph is condensed into strongly connected components once.
+// Each component gets a DFS interval [low, post] over the condensation: if
+// the interval of b is not nested in the one of a, b is not reachable from a,
+// which answers most negative dependence tests without a traversal. Slices
+// are unions of component closures, and every closure is computed at most
+// once per direction and then shared by all later queries.
+public class Slicer {
+    private final PDG pdg;
+    private final int nodeCount;
+    private final CsrGraph.Plane control;
+    private final CsrGraph.Plane data;
+
+    private final int[] comp;          // node -> component
+    private final int[] memberOffsets; // component -> slice of members
+    private final int[] members;
+    private final int[] succOffsets;   // condensation, forward
+    private final int[] succ;
+    private final int[] predOffsets;   // condensation, backward
+    private final int[] pred;
+    private final int[] low;
+    private final int[] post;
+
+    private final BitSet[] forwardClosure;
+    private final BitSet[] backwardClosure;
+    private Map<String, Integer> varIds;
+
+    public Slicer(PDG pdg) {
+        this.pdg = pdg;
+        this.nodeCount = pdg.graph.nodeCount;
+        this.control = pdg.graph.control;
+        this.data = pdg.graph.data;
+
+        this.comp = new int[nodeCount];
+        int compCount = findComponents();
+
+        this.memberOffsets = new int[compCount + 1];
+        this.members = new int[nodeCount];
+        for (int v = 0; v < nodeCount; ++v) ++memberOffsets[comp[v] + 1];
+        for (int c = 0; c < compCount; ++c) memberOffsets[c + 1] += memberOffsets[c];
+        int[] fill = Arrays.copyOf(memberOffsets, compCount);
+        for (int v = 0; v < nodeCount; ++v) members[fill[comp[v]]++] = v;
+
+        // Condensation edges, without self-loops and duplicates
+        var forward = new CsrGraph.EdgeBuffer(false);
+        int[] lastSeen = new int[compCount];
+        Arrays.fill(lastSeen, -1);
+        for (int c = 0; c < compCount; ++c) {
+            for (int i = memberOffsets[c]; i < memberOffsets[c + 1]; ++i) {
+                int v = members[i];
+                for (int k = 0; k < outDegree(v); ++k) {
+                    int t = comp[successor(v, k)];
+                    if (t != c && lastSeen[t] != c) {
+                        lastSeen[t] = c;
+                        forward.add(c, t, -1);
+                    }
+                }
+            }
+        }
+        CsrGraph.Plane dag = forward.toPlane(compCount);
+        this.succOffsets = dag.outOffsets;
+        this.succ = dag.targets;
+        this.predOffsets = dag.inOffsets;
+        this.pred = dag.sources;
+
+        this.low = new int[compCount];
+        this.post = new int[compCount];
+        labelIntervals(compCount);
+
+        this.forwardClosure = new BitSet[compCount];
+        this.backwardClosure = new BitSet[compCount];
+    }
+
+    // Nodes that node transitively depends on, including node
+    public synchronized BitSet backwardSlice(int node) {
+        return (BitSet) closure(comp[node], false).clone();
+    }
+
+    // Nodes that transitively depend on node, including node
+    public synchronized BitSet forwardSlice(int node) {
+        return (BitSet) closure(comp[node], true).clone();
+    }
+
+    // Backward slice of the value of var used at node
+    public synchronized BitSet backwardSlice(int node, String var) {
+        BitSet slice = new BitSet(nodeCount);
+        slice.set(node);
+        int varId = varId(var);
+        for (int e = data.inBegin(node); e < data.inEnd(node); ++e) {
+            if (data.inHasVar(e, varId)) slice.or(closure(comp[data.source(e)], false));
+        }
+        return slice;
+    }
+
+    // Forward slice of the value of var defined at node
+    public synchronized BitSet forwardSlice(int node, String var) {
+        BitSet slice = new BitSet(nodeCount);
+        slice.set(node);
+        int varId = varId(var);
+        for (int e = data.outBegin(node); e < data.outEnd(node); ++e) {
+            if (data.outHasVar(e, varId)) slice.or(closure(comp[data.target(e)], true));
+        }
+        return slice;
+    }
+
+    // Nodes on some dependence path from source to target
+    public synchronized BitSet chop(int source, int target) {
+        if (!reaches(comp[source], comp[target])) return new BitSet();
+        BitSet chop = (BitSet) closure(comp[source], true).clone();
+        chop.and(closure(comp[target], false));
+        return chop;
+    }
+
+    // True if node transitively depends on dependee
+    public synchronized boolean dependsOn(int node, int dependee) {
+        return reaches(comp[dependee], comp[node]);
+    }
+
+    public PDG pdg() {
+        return pdg;
+    }
+
+    private boolean reaches(int a, int b) {
+        if (a == b) return true;
+        if (low[b] < low[a] || post[b] > post[a]) return false;
+        if (forwardClosure[a] != null) return forwardClosure[a].get(members[memberOffsets[b]]);
+        if (backwardClosure[b] != null) return backwardClosure[b].get(members[memberOffsets[a]]);
+        return closure(a, true).get(members[memberOffsets[b]]);
+    }
+
+    // Union of the members of every component reachable from c, memoized.
+    // Components are visited in post-order so that successors are done first.
+    private BitSet closure(int c, boolean forward) {
+        BitSet[] memo = forward ? forwardClosure : backwardClosure;
+        if (memo[c] != null) return memo[c];
+        int[] offsets = forward ? succOffsets : predOffsets;
+        int[] adj = forward ? succ : pred;
+
+        Deque<int[]> stack = new ArrayDeque<>(); // {component, next edge}
+        stack.push(new int[] { c, offsets[c] });
+        while (!stack.isEmpty()) {
+            int[] top = stack.peek();
+            int x = top[0];
+            if (top[1] < offsets[x + 1]) {
+                int y = adj[top[1]++];
+                if (memo[y] == null) stack.push(new int[] { y, offsets[y] });
+                continue;
+            }
+            stack.pop();
+            BitSet set = new BitSet(nodeCount);
+            for (int i = memberOffsets[x]; i < memberOffsets[x + 1]; ++i) set.set(members[i]);
+            for (int e = offsets[x]; e < offsets[x + 1]; ++e) set.or(memo[adj[e]]);
+            memo[x] = set;
+        }
+        return memo[c];
+    }
+
+    // post[c] is the post-order number of c, low[c] the smallest post-order
+    // number among its descendants; descendants of a have intervals inside a's
+    private void labelIntervals(int compCount) {
+        boolean[] visited = new boolean[compCount];
+        int[] stack = new int[compCount];
+        int[] next = new int[compCount];
+        int counter = 0;
+        for (int root = 0; root < compCount; ++root) {
+            if (visited[root] || predOffsets[root] != predOffsets[root + 1]) continue;
+            counter = labelFrom(root, visited, stack, next, counter);
+        }
+        for (int root = 0; root < compCount; ++root) {
+            if (!visited[root]) counter = labelFrom(root, visited, stack, next, counter);
+        }
+    }
+
+    private int labelFrom(int root, boolean[] visited, int[] stack, int[] next, int counter) {
+        int depth = 0;
+        stack[depth++] = root;
+        visited[root] = true;
+        next[root] = succOffsets[root];
+        low[root] = Integer.MAX_VALUE;
+        while (depth > 0) {
+            int x = stack[depth - 1];
+            if (next[x] < succOffsets[x + 1]) {
+                int y = succ[next[x]++];
+                if (!visited[y]) {
+                    visited[y] = true;
+                    next[y] = succOffsets[y];
+                    low[y] = Integer.MAX_VALUE;
+                    stack[depth++] = y;
+                } else {
+                    low[x] = Math.min(low[x], low[y]);
+                }
+                continue;
+            }
+            post[x] = counter++;
+            low[x] = Math.min(low[x], post[x]);
+            --depth;
+            if (depth > 0) {
+                int parent = stack[depth - 1];
+                low[parent] = Math.min(low[parent], low[x]);
+            }
+        }
+        return counter;
+    }
+
+    // Iterative Tarjan; components are numbered in reverse topological order
+    private int findComponents() {
+        int[] index = new int[nodeCount];
+        int[] lowLink = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] sccStack = new int[nodeCount];
+        int[] callStack = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+        Arrays.fill(index, -1);
+        int counter = 0;
+        int sccTop = 0;
+        int compCount = 0;
+
+        for (int root = 0; root < nodeCount; ++root) {
+            if (index[root] != -1) continue;
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = counter++;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (nextEdge[v] < outDegree(v)) {
+                    int w = successor(v, nextEdge[v]++);
+                    if (index[w] == -1) {
+                        index[w] = lowLink[w] = counter++;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        callStack[depth++] = w;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = sccStack[--sccTop];
+                        onStack[w] = false;
+                        comp[w] = compCount;
+                    } while (w != v);
+                    ++compCount;
+                }
+                --depth;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+        return compCount;
+    }
+
+    // Successors over both planes: CONTROL first, then DATA
+    private int outDegree(int v) {
+        return control.outEnd(v) - control.outBegin(v) + data.outEnd(v) - data.outBegin(v);
+    }
+
+    private int successor(int v, int k) {
+        int controlDegree = control.outEnd(v) - control.outBegin(v);
+        return k < controlDegree ? control.target(control.outBegin(v) + k)
+                                 : data.target(data.outBegin(v) + k - controlDegree);
+    }
+
+    private int varId(String var) {
+        if (varIds == null) {
+            varIds = new HashMap<>();
+            for (int i = 0; i < pdg.graph.vars.length; ++i) varIds.put(pdg.graph.vars[i], i);
+        }
+        return varIds.getOrDefault(var, -2);
+    }
+}
@@ -0,0 +1,85 @@
+package ru.itmo.khaser.java_pdg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// The .java files of a run's inputs: directory trees, single files, and zip
+// or jar archives (-sources.jar snapshots). An archive is opened as an NIO
+// zip file system and its entries are read in place, nothing is extracted;
+// they are named <archive file name>!/<path in the archive>, after the input
+// number like every source of several inputs. The archives stay open until
+// close(), after the last source has been read.
+class SourceSet implements Closeable {
+    final List<BatchRunner.Source> sources;
+    private final List<FileSystem> archives;
+
+    private SourceSet(List<BatchRunner.Source> sources, List<FileSystem> archives) {
+        this.sources = sources;
+        this.archives = archives;
+    }
+
+    static SourceSet open(List<Path> inputs) throws IOException {
+        List<BatchRunner.Source> sources = new ArrayList<>();
+        List<FileSystem> archives = new ArrayList<>();
+        try {
+            for (int i = 0; i < inputs.size(); ++i) {
+                Path input = inputs.get(i);
+                if (!isArchive(input)) {
+                    BatchRunner.collectSources(input, BatchRunner.inputPrefix(inputs, i), sources);
+                    continue;
+                }
+                FileSystem archive = FileSystems.newFileSystem(input);
+                archives.add(archive);
+                String prefix = BatchRunner.inputPrefix(inputs, i) + input.getFileName() + "!/";
+                for (Path root : archive.getRootDirectories()) {
+                    try (Stream<Path> walk = Files.walk(root)) {
+                        List<Path> files = walk
+                            .filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p))
+                            .sorted()
+                            .collect(Collectors.toList());
+                        for (Path file : files) {
+                            sources.add(new BatchRunner.Source(file, prefix + root.relativize(file)));
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (FileSystem archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return new SourceSet(sources, archives);
+    }
+
+    static boolean isArchive(Path input) {
+        String name = input.getFileName() != null ? input.getFileName().toString().toLowerCase(Locale.ROOT) : "";
+        return (name.endsWith(".jar") || name.endsWith(".zip")) && Files.isRegularFile(input);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileSystem archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.itmo.khaser.java_pdg;
+
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.resolution.SymbolResolver;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Thread-safe front of the JavaParser symbol solver, which is not: every
+// thread gets a solver stack of its own on its first lookup, a JavaSymbolSolver
+// over a CachingTypeSolver over the JDK and the source roots, so lookups on
+// different threads never wait for each other. Compilation units parsed with
+// parserConfiguration() resolve through the stack of the resolving thread.
+//
+// Types are cached by name below each solver, so that every lookup it makes
+// internally is answered once. Names that resolve to no type are shared by
+// all stacks; resolved types are not, a type declaration calls back into the
+// solver that produced it. The solver caches expression types on AST nodes,
+// so a compilation unit has to be resolved on one thread at a time.
+public class SymbolCache {
+    // Memoizes tryToSolveType, which the solver repeats for the same names.
+    // Used by one thread, apart from the shared set of unsolved names
+    static class CachingTypeSolver implements TypeSolver {
+        private final TypeSolver delegate;
+        private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> types = new HashMap<>();
+        private final Set<String> unsolved;
+        private final LongAdder hits;
+        private final LongAdder misses;
+        private TypeSolver parent;
+
+        CachingTypeSolver(TypeSolver delegate, Set<String> unsolved, LongAdder hits, LongAdder misses) {
+            this.delegate = delegate;
+            this.unsolved = unsolved;
+            this.hits = hits;
+            this.misses = misses;
+            // Nested lookups start from the root, which has to be this cache
+            delegate.setParent(this);
+        }
+
+        @Override
+        public TypeSolver getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            var cached = types.get(name);
+            if (cached == null && unsolved.contains(name)) cached = SymbolReference.unsolved();
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+            var solved = delegate.tryToSolveType(name);
+            if (solved.isSolved()) {
+                types.put(name, solved);
+            } else {
+                unsolved.add(name);
+            }
+            return solved;
+        }
+    }
+
+    // Resolves with the stack of the calling thread
+    private class ThreadSymbolResolver implements SymbolResolver {
+        @Override
+        public <T> T resolveDeclaration(Node node, Class<T> resultClass) {
+            return solvers.get().resolveDeclaration(node, resultClass);
+        }
+
+        @Override
+        public <T> T toResolvedType(Type type, Class<T> resultClass) {
+            return solvers.get().toResolvedType(type, resultClass);
+        }
+
+        @Override
+        public ResolvedType calculateType(Expression expression) {
+            return solvers.get().calculateType(expression);
+        }
+
+        @Override
+        public ResolvedReferenceTypeDeclaration toTypeDeclaration(Node node) {
+            return solvers.get().toTypeDeclaration(node);
+        }
+    }
+
+    private final List<Path> roots = new CopyOnWriteArrayList<>();
+    private final Set<String> unsolvedTypes = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<JavaSymbolSolver> solvers = ThreadLocal.withInitial(this::newSolver);
+    private final ParserConfiguration configuration;
+    private final LongAdder resolved = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder typeHits = new LongAdder();
+    private final LongAdder typeMisses = new LongAdder();
+
+    // Types are looked up in the JDK and in the source roots added later
+    public SymbolCache() {
+        this.configuration = new ParserConfiguration().setSymbolResolver(new ThreadSymbolResolver());
+    }
+
+    // root is a package root: the directory of the default package.
+    // Roots have to be added before the first lookup
+    public void addSourceRoot(Path root) {
+        roots.add(root);
+    }
+
+    // Compilation units parsed with this configuration can be resolved
+    public ParserConfiguration parserConfiguration() {
+        return configuration;
+    }
+
+    // Qualified signature of the method call resolves to, null if it cannot be resolved
+    public String resolveCall(MethodCallExpr call) {
+        return lookup(() -> call.resolve().getQualifiedSignature());
+    }
+
+    // Qualified signature of method, in the same form as resolveCall, null if unknown
+    public String qualifiedSignature(MethodDeclaration method) {
+        return lookup(() -> method.resolve().getQualifiedSignature());
+    }
+
+    public String stats() {
+        return "symbols: " + resolved.sum() + " resolved, " + unresolved.sum() + " unresolved"
+            + "; types: " + typeHits.sum() + " hits, " + typeMisses.sum() + " misses";
+    }
+
+    private JavaSymbolSolver newSolver() {
+        var combined = new CombinedTypeSolver(new ReflectionTypeSolver());
+        for (Path root : roots) combined.add(new JavaParserTypeSolver(root));
+        return new JavaSymbolSolver(new CachingTypeSolver(combined, unsolvedTypes, typeHits, typeMisses));
+    }
+
+    private String lookup(Supplier<String> resolve) {
+        try {
+            String signature = resolve.get();
+            resolved.increment();
+            return signature;
+        } catch (RuntimeException e) {
+            // UnsolvedSymbolException, or one of the unchecked exceptions
+            // the solver throws for constructs it does not support
+            unresolved.increment();
+            return null;
+        }
+    }
+}